@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of bitmaps that are no longer displayed, reused to decode new images through
+ * {@code BitmapFactory.Options.inBitmap} instead of allocating a new bitmap each time.
+ *
+ * Bitmaps delivered by the SDK are counted: each delivery and each memory cache holding a
+ * bitmap is a reference, {@link #release(Bitmap)} and cache evictions drop one. A bitmap
+ * enters the pool once nobody references it anymore. The pool keeps bitmaps up to a number
+ * of bytes and drops the least recently released ones first.
+ *
+ * Since Android 4.4 a pooled bitmap is reused for any image that fits in its memory, before
+ * that only for an image of the same size that is not subsampled.
+ */
+public final class BitmapPool implements MemoryGovernor.Trimmable {
+
+    /**
+     * Default size of the pool: a sixteenth of the heap.
+     */
+    public static final int DEFAULT_MAX_SIZE = (int) (Runtime.getRuntime().maxMemory() / 16);
+
+    /** A pooled bitmap is not reused for an image needing less than this part of its memory. */
+    private static final int MAX_WASTE_RATIO = 2;
+
+    private final int maxSize;
+    private int size;
+
+    /** Pooled bitmaps, least recently released first. */
+    private final LinkedHashSet<Bitmap> pooled = new LinkedHashSet<Bitmap>();
+    /** Pooled bitmaps by allocated bytes. */
+    private final TreeMap<Integer, ArrayList<Bitmap>> bySize = new TreeMap<Integer, ArrayList<Bitmap>>();
+    /** Reference count of the bitmaps delivered by the SDK. */
+    private final WeakHashMap<Bitmap, int[]> references = new WeakHashMap<Bitmap, int[]>();
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize size of the pooled bitmaps, in bytes
+     */
+    public BitmapPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Tell the pool that a bitmap delivered by the SDK is no longer displayed. It is reused
+     * once it is not referenced by a cache either, so it must not be drawn after this call.
+     *
+     * @param bitmap the bitmap, may be null
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        int[] count = references.get(bitmap);
+        if (count != null && --count[0] > 0) {
+            return;
+        }
+        references.remove(bitmap);
+        if (bitmap.isRecycled() || !bitmap.isMutable() || pooled.contains(bitmap)) {
+            return;
+        }
+        int bytes = allocationSize(bitmap);
+        if (bytes > maxSize) {
+            return;
+        }
+        pooled.add(bitmap);
+        ArrayList<Bitmap> bitmaps = bySize.get(bytes);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>();
+            bySize.put(bytes, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        size += bytes;
+        trimTo(maxSize);
+    }
+
+    /**
+     * @return the size of the pooled bitmaps, in bytes
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the maximum size of the pooled bitmaps, in bytes
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Drop every pooled bitmap.
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    /**
+     * Add a reference to a bitmap, before delivering it or keeping it in a cache.
+     */
+    synchronized void acquire(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        int[] count = references.get(bitmap);
+        if (count == null) {
+            references.put(bitmap, new int[]{1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Take a pooled bitmap an image can be decoded into.
+     *
+     * @param width      width of the decoded image
+     * @param height     height of the decoded image
+     * @param config     configuration of the decoded image, null for ARGB_8888
+     * @param sampleSize the sample size the image is decoded with
+     * @return the bitmap, removed from the pool, or null if none fits
+     */
+    synchronized Bitmap take(int width, int height, Bitmap.Config config, int sampleSize) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            long needed = (long) width * height * bytesPerPixel(config);
+            Map.Entry<Integer, ArrayList<Bitmap>> candidates =
+                    bySize.ceilingEntry((int) Math.min(needed, Integer.MAX_VALUE));
+            if (candidates == null || candidates.getKey() > needed * MAX_WASTE_RATIO) {
+                return null;
+            }
+            return remove(candidates.getValue().get(0));
+        }
+        if (sampleSize != 1) {
+            return null;
+        }
+        Bitmap.Config wanted = (config != null) ? config : Bitmap.Config.ARGB_8888;
+        for (Bitmap bitmap : pooled) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == wanted) {
+                return remove(bitmap);
+            }
+        }
+        return null;
+    }
+
+    private Bitmap remove(Bitmap bitmap) {
+        pooled.remove(bitmap);
+        int bytes = allocationSize(bitmap);
+        ArrayList<Bitmap> bitmaps = bySize.get(bytes);
+        bitmaps.remove(bitmap);
+        if (bitmaps.isEmpty()) {
+            bySize.remove(bytes);
+        }
+        size -= bytes;
+        return bitmap;
+    }
+
+    @Override
+    public synchronized long trimMemory(float keep) {
+        int before = size;
+        trimTo((int) (maxSize * keep));
+        return before - size;
+    }
+
+    private void trimTo(int maxSize) {
+        while (size > maxSize && !pooled.isEmpty()) {
+            remove(pooled.iterator().next());
+        }
+    }
+
+    private static int allocationSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
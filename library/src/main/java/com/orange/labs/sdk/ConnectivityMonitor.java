@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Follow the network connectivity of the device. Requires the ACCESS_NETWORK_STATE
+ * permission, declared by the SDK.
+ */
+final class ConnectivityMonitor {
+
+    /**
+     * Callback interface for connectivity changes, called on the main thread.
+     */
+    interface Listener {
+        void onConnectivityChanged(boolean online);
+    }
+
+    private final ConnectivityManager manager;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private volatile boolean online;
+
+    ConnectivityMonitor(Context context) {
+        Context application = context.getApplicationContext();
+        if (application == null) {
+            application = context;
+        }
+        manager = (ConnectivityManager) application.getSystemService(Context.CONNECTIVITY_SERVICE);
+        online = readState();
+        application.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                boolean state = readState();
+                if (state != online) {
+                    online = state;
+                    for (Listener listener : listeners) {
+                        listener.onConnectivityChanged(state);
+                    }
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * @return true if the device has a network connection
+     */
+    boolean isOnline() {
+        return online;
+    }
+
+    void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private boolean readState() {
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Size-bounded directory of byte arrays, evicting the least recently used files first.
+ *
+ * The last modification time of a file is its last access time. Methods block on disk I/O and
+ * must not be called from the main thread.
+ */
+final class DiskLru {
+
+    private final File directory;
+    private long maxSize;
+    /** Total size of the files, -1 until the directory has been scanned. */
+    private long size = -1;
+
+    /**
+     * @param directory directory of the files, created if needed. It should not be used for
+     *                  anything else.
+     * @param maxSize   maximum total size of the files
+     */
+    DiskLru(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    synchronized void setMaxSize(long bytes) {
+        maxSize = bytes;
+        trim();
+    }
+
+    /**
+     * @return the bytes stored for a key, null if none
+     */
+    synchronized byte[] get(String key) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] data = FileUtils.readFileToByteArray(file);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            e.printStackTrace();
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if bytes are stored for a key
+     */
+    synchronized boolean contains(String key) {
+        return file(key).isFile();
+    }
+
+    synchronized void put(String key, byte[] data) {
+        if (data == null || data.length > maxSize) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        scan();
+        File file = file(key);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try {
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(data);
+            } finally {
+                output.close();
+            }
+            size -= file.length();
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                size += file.length();
+                return;
+            }
+            size += data.length;
+            trim();
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporary.delete();
+        }
+    }
+
+    synchronized void remove(String key) {
+        File file = file(key);
+        if (file.isFile()) {
+            scan();
+            size -= file.length();
+            file.delete();
+        }
+    }
+
+    synchronized void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Remove the least recently used files until the total size is below {@code bytes}.
+     *
+     * @return the number of bytes freed
+     */
+    synchronized long trimTo(long bytes) {
+        scan();
+        if (size <= bytes) {
+            return 0;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+            }
+        });
+        long freed = 0;
+        for (File file : files) {
+            if (size <= bytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                freed += length;
+            }
+        }
+        return freed;
+    }
+
+    private void trim() {
+        if (size > maxSize) {
+            trimTo(maxSize);
+        }
+    }
+
+    private void scan() {
+        if (size >= 0) {
+            return;
+        }
+        size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+    }
+
+    private File file(String key) {
+        return new File(directory, hash(key));
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical Entry of each remote file or folder.
+ *
+ * Every Entry returned by the API is resolved through this map: the first Entry seen for an
+ * identifier becomes its canonical instance, and later responses about the same identifier
+ * update that instance in place instead of producing a copy. Instances are weakly referenced
+ * and dropped once the application no longer holds them.
+ *
+ * Canonical entries are read by the views on the main thread, so they are only modified on
+ * the main thread. Responses of the synchronus methods, resolved on a worker thread, are
+ * returned as they are and applied to the canonical entries later on the main thread.
+ */
+public final class EntryIdentityMap {
+
+    /**
+     * Callback interface for changes of canonical entries. Listeners are called on the main
+     * thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a canonical entry has been updated in place.
+         *
+         * @param entry the updated entry
+         */
+        public void onEntryChanged(Entry entry);
+
+        /**
+         * Called when a file or folder has been deleted.
+         *
+         * @param identifier identifier of the deleted entry
+         */
+        public void onEntryDeleted(String identifier);
+    }
+
+    private final Map<String, Reference> entries = new HashMap<String, Reference>();
+    private final ReferenceQueue<Entry> queue = new ReferenceQueue<Entry>();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    EntryIdentityMap() {
+    }
+
+    /**
+     * @param listener listener to add
+     */
+    public void addListener(Listener listener) {
+        synchronized (listeners) {
+            if (!listeners.contains(listener)) {
+                listeners.add(listener);
+            }
+        }
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    public void removeListener(Listener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * @param identifier an identifier
+     * @return the canonical entry of this identifier, null if none is in use
+     */
+    public Entry get(String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Reference reference = entries.get(identifier);
+            return (reference != null) ? reference.get() : null;
+        }
+    }
+
+    /**
+     * Resolve an entry of a response to its canonical instance.
+     *
+     * @param entry        the entry received from the server, may be null
+     * @param withContents true if {@code entry} holds the listing of its contents
+     * @return the canonical entry, updated with the values of {@code entry}, or {@code entry}
+     * itself when called outside of the main thread
+     */
+    Entry resolve(Entry entry, final boolean withContents) {
+        if (entry == null || entry.identifier == null || entry.identifier.length() == 0) {
+            return entry;
+        }
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            // The caller keeps its entry, the canonical one is updated from a copy
+            final Entry copy = new Entry();
+            copy.identifier = entry.identifier;
+            copy.updateFrom(entry, withContents);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    resolve(copy, withContents);
+                }
+            });
+            return entry;
+        }
+        Entry canonical;
+        boolean changed;
+        synchronized (entries) {
+            purge();
+            Reference reference = entries.get(entry.identifier);
+            canonical = (reference != null) ? reference.get() : null;
+            if (canonical == null || canonical == entry) {
+                entries.put(entry.identifier, new Reference(entry, queue));
+                return entry;
+            }
+            synchronized (canonical) {
+                changed = canonical.updateFrom(entry, withContents);
+            }
+        }
+        if (changed) {
+            notifyChanged(canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * Forget a deleted entry.
+     *
+     * @param identifier identifier of the deleted entry
+     */
+    void remove(final String identifier) {
+        if (identifier == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(identifier);
+        }
+        for (final Listener listener : snapshot()) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onEntryDeleted(identifier);
+                }
+            });
+        }
+    }
+
+    private void notifyChanged(final Entry entry) {
+        for (final Listener listener : snapshot()) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onEntryChanged(entry);
+                }
+            });
+        }
+    }
+
+    private List<Listener> snapshot() {
+        synchronized (listeners) {
+            return new ArrayList<Listener>(listeners);
+        }
+    }
+
+    private void purge() {
+        java.lang.ref.Reference<? extends Entry> cleared;
+        while ((cleared = queue.poll()) != null) {
+            Reference reference = (Reference) cleared;
+            // The identifier may have been registered again with a new instance
+            if (entries.get(reference.identifier) == reference) {
+                entries.remove(reference.identifier);
+            }
+        }
+    }
+
+    private static final class Reference extends WeakReference<Entry> {
+        final String identifier;
+
+        Reference(Entry entry, ReferenceQueue<Entry> queue) {
+            super(entry, queue);
+            identifier = entry.identifier;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache of the thumbnails and previews of entries, in memory and on disk.
+ *
+ * The memory tier holds decoded bitmaps up to a number of bytes. The disk tier holds the
+ * encoded images as downloaded, so they are still available after a restart, and evicts the
+ * least recently used ones once over its size. Images are keyed by entry identifier and
+ * variant, so the same image is found whatever request fetched it.
+ */
+public final class EntryImageCache implements MemoryGovernor.Trimmable {
+
+    /**
+     * Default size of the memory tier: an eighth of the heap.
+     */
+    public static final int DEFAULT_MAX_MEMORY_SIZE = (int) (Runtime.getRuntime().maxMemory() / 8);
+
+    /**
+     * Default size of the disk tier.
+     */
+    public static final long DEFAULT_MAX_DISK_SIZE = 50 * 1024 * 1024;
+
+    /**
+     * Image variants of an entry.
+     */
+    public enum Variant {
+        THUMBNAIL, PREVIEW
+    }
+
+    /** Number of images decoded again on start up, at most. */
+    static final int MAX_WARM_IMAGES = 64;
+
+    /** Key of the list of the images in memory, kept on disk to warm the next start up. */
+    private static final String HOT_KEYS = "#hot";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LruCache<String, Bitmap> memory;
+    private final DiskLru disk;
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private volatile BitmapPool pool;
+
+    /**
+     * @param directory directory of the disk tier, created if needed. It should not be used for
+     *                  anything else.
+     */
+    public EntryImageCache(File directory) {
+        this(directory, DEFAULT_MAX_MEMORY_SIZE, DEFAULT_MAX_DISK_SIZE);
+    }
+
+    /**
+     * @param directory     directory of the disk tier
+     * @param maxMemorySize size of the decoded bitmaps kept in memory, in bytes
+     * @param maxDiskSize   size of the encoded images kept on disk, in bytes
+     */
+    public EntryImageCache(File directory, int maxMemorySize, long maxDiskSize) {
+        memory = new LruCache<String, Bitmap>(maxMemorySize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                BitmapPool bitmaps = pool;
+                if (bitmaps != null) {
+                    bitmaps.release(oldValue);
+                }
+            }
+        };
+        disk = new DiskLru(directory, maxDiskSize);
+    }
+
+    /**
+     * Key of an image.
+     *
+     * @param identifier identifier of the entry
+     * @param variant    the image variant
+     * @return the key
+     */
+    public static String key(String identifier, Variant variant) {
+        return identifier + "#" + variant.name();
+    }
+
+    /**
+     * @param key key of the image
+     * @return the decoded image, null if it is not in memory
+     */
+    public Bitmap getBitmap(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * @param key    key of the image
+     * @param bitmap the decoded image
+     */
+    public void putBitmap(String key, Bitmap bitmap) {
+        if (bitmap != null) {
+            BitmapPool bitmaps = pool;
+            if (bitmaps != null) {
+                bitmaps.acquire(bitmap);
+            }
+            memory.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Hand the bitmaps evicted from memory to a pool, when they are not displayed anymore.
+     *
+     * @param pool the pool, null to leave them to the garbage collector
+     */
+    void setBitmapPool(BitmapPool pool) {
+        // Bitmaps cached so far were not counted by the new pool
+        memory.evictAll();
+        this.pool = pool;
+    }
+
+    /**
+     * Read an encoded image from disk. Must not be called from the main thread.
+     *
+     * @param key key of the image
+     * @return the encoded image, null if it is not on disk
+     */
+    public byte[] getEncoded(String key) {
+        return disk.get(key);
+    }
+
+    /**
+     * Write an encoded image to disk. Must not be called from the main thread.
+     *
+     * @param key  key of the image
+     * @param data the encoded image
+     */
+    public void putEncoded(String key, byte[] data) {
+        disk.put(key, data);
+    }
+
+    /**
+     * Remove the images of an entry from memory and from disk. Must not be called from the
+     * main thread.
+     *
+     * @param identifier identifier of the entry
+     */
+    public void remove(String identifier) {
+        for (Variant variant : Variant.values()) {
+            String key = key(identifier, variant);
+            memory.remove(key);
+            disk.remove(key);
+        }
+    }
+
+    /**
+     * Remove the images of an entry from memory and from disk, in the background.
+     *
+     * @param identifier identifier of the entry
+     */
+    void removeInBackground(final String identifier) {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                remove(identifier);
+            }
+        });
+    }
+
+    /**
+     * Evict the least recently used images from memory. The disk tier is left untouched.
+     */
+    @Override
+    public long trimMemory(float keep) {
+        if (keep < 1) {
+            // Likely leaving the application, remember what it was showing
+            saveHotKeys();
+        }
+        int before = memory.size();
+        long target = (long) (memory.maxSize() * keep);
+        // Least recently used first
+        for (String key : memory.snapshot().keySet()) {
+            if (memory.size() <= target) {
+                break;
+            }
+            memory.remove(key);
+        }
+        return before - memory.size();
+    }
+
+    /**
+     * Write the keys of the images in memory to disk, in the background, so that they are
+     * decoded again on the next start up (see {@link RestUtils#warmImages}).
+     */
+    void saveHotKeys() {
+        final StringBuilder keys = new StringBuilder();
+        // Least recently used first
+        for (String key : memory.snapshot().keySet()) {
+            keys.append(key).append('\n');
+        }
+        if (keys.length() == 0) {
+            return;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                disk.put(HOT_KEYS, keys.toString().getBytes(UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Read the keys written by {@link #saveHotKeys()}. Must not be called from the main thread.
+     *
+     * @return the memory keys of the images, most recently used first
+     */
+    List<String> readHotKeys() {
+        List<String> keys = new ArrayList<String>();
+        byte[] data = disk.get(HOT_KEYS);
+        if (data != null) {
+            for (String key : new String(data, UTF_8).split("\n")) {
+                if (key.length() > 0) {
+                    keys.add(0, key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Remove every image from memory and from disk. Must not be called from the main thread.
+     */
+    public void clear() {
+        memory.evictAll();
+        disk.clear();
+    }
+}
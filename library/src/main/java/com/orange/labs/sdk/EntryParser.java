@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.OrangeCloudAPI.Metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+
+/**
+ * Build {@link Entry} objects directly from the JSON token stream returned by the Cloud Api,
+ * without materializing a JSONObject tree first. Fields the caller did not ask for are
+ * skipped without being decoded.
+ */
+public final class EntryParser implements RestUtils.StreamParser<Entry> {
+
+    /**
+     * Optional fields of an Entry. The identifier and the type are always parsed.
+     */
+    public enum Field {
+        NAME, PARENT, URLS, SIZE, CREATION_DATE, MD5, METADATA, CONTENTS
+    }
+
+    /**
+     * Parser of every field of an entry.
+     */
+    public static final EntryParser ALL = new EntryParser(EnumSet.allOf(Field.class));
+
+    private final boolean name;
+    private final boolean parent;
+    private final boolean urls;
+    private final boolean size;
+    private final boolean creationDate;
+    private final boolean md5;
+    private final boolean metadata;
+    private final boolean contents;
+    private final boolean extraInfos;
+
+    /**
+     * @param fields the fields to parse, others are skipped
+     */
+    public EntryParser(EnumSet<Field> fields) {
+        this(fields, false);
+    }
+
+    private EntryParser(EnumSet<Field> fields, boolean extraInfos) {
+        name = fields.contains(Field.NAME);
+        parent = fields.contains(Field.PARENT);
+        urls = fields.contains(Field.URLS);
+        size = fields.contains(Field.SIZE);
+        creationDate = fields.contains(Field.CREATION_DATE);
+        md5 = fields.contains(Field.MD5);
+        metadata = fields.contains(Field.METADATA);
+        contents = fields.contains(Field.CONTENTS);
+        this.extraInfos = extraInfos;
+    }
+
+    /**
+     * @return a parser of file info responses, flagging entries as having their extra
+     * information available
+     */
+    public static EntryParser extraInfos() {
+        return new EntryParser(EnumSet.allOf(Field.class), true);
+    }
+
+    @Override
+    public Entry parse(InputStream input) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            return readEntry(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the next entry of a reader. The children of a folder are only created when they
+     * are accessed (see {@link LazyEntryList}).
+     *
+     * @param reader a reader positioned on an entry object
+     * @return the Entry
+     */
+    public Entry readEntry(JsonReader reader) throws IOException {
+        Record record = new Record();
+        EntryTable rows = contents ? new EntryTable(extraInfos) : null;
+        readRecord(reader, record, rows);
+
+        Entry entry = new Entry();
+        entry.identifier = Interner.intern(record.identifier);
+        entry.type = Entry.typeOf(record.type);
+        entry.name = record.name;
+        entry.parentIdentifier = Interner.intern(record.parent);
+        entry.setDownloadURL(record.downloadURL);
+        entry.setPreviewURL(record.previewURL);
+        entry.setThumbnailURL(record.thumbnailURL);
+        if (record.hasSize) {
+            entry.bytes = record.bytes;
+            entry.size = Entry.humanReadableByteCount(entry.bytes, true);
+        }
+        entry.creationDate = Entry.parseDate(record.creationDate);
+        entry.md5 = record.md5;
+        entry.metadata = record.metadata;
+
+        if (entry.type == Entry.Type.DIRECTORY) {
+            if (rows != null) {
+                rows.trimToSize();
+                // Sub folders first, then files
+                int[] order = new int[rows.size()];
+                int position = 0;
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int row = 0; row < order.length; row++) {
+                        if (record.isSubfolder(row) == (pass == 0)) {
+                            order[position++] = row;
+                        }
+                    }
+                }
+                entry.contents = new LazyEntryList(rows, order);
+            } else {
+                entry.contents = new ArrayList<Entry>();
+            }
+        }
+        entry.extraInfoAvailable = extraInfos;
+        return entry;
+    }
+
+    /**
+     * Read the fields of an entry object. Children found in its "subfolders" and "files"
+     * arrays are appended to {@code rows}, or skipped when it is null.
+     */
+    private void readRecord(JsonReader reader, Record record, EntryTable rows) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("id")) {
+                record.identifier = nextString(reader);
+            } else if (key.equals("type")) {
+                record.type = nextString(reader);
+            } else if (name && key.equals("name")) {
+                record.name = nextString(reader);
+            } else if (parent && key.equals("parentId")) {
+                record.parent = nextString(reader);
+            } else if (urls && key.equals("downloadUrl")) {
+                record.downloadURL = nextString(reader);
+            } else if (urls && key.equals("previewUrl")) {
+                record.previewURL = nextString(reader);
+            } else if (urls && key.equals("thumbUrl")) {
+                record.thumbnailURL = nextString(reader);
+            } else if (size && key.equals("size")) {
+                record.bytes = nextLong(reader);
+                record.hasSize = true;
+            } else if (creationDate && key.equals("creationDate")) {
+                record.creationDate = nextString(reader);
+            } else if (md5 && key.equals("md5")) {
+                record.md5 = nextString(reader);
+            } else if (metadata && key.equals("metadata") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                record.metadata = readMetadata(reader);
+            } else if (rows != null && key.equals("subfolders") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readChildren(reader, record, rows, true);
+            } else if (rows != null && key.equals("files") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readChildren(reader, record, rows, false);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        setDefaults(record);
+    }
+
+    /**
+     * Give the parsed fields missing from the response an empty value, like
+     * JSONObject.optString does. Fields that were not asked for stay null.
+     */
+    private void setDefaults(Record record) {
+        record.identifier = orEmpty(record.identifier);
+        record.type = orEmpty(record.type);
+        if (name) {
+            record.name = orEmpty(record.name);
+        }
+        if (parent) {
+            record.parent = orEmpty(record.parent);
+        }
+        if (urls) {
+            record.downloadURL = orEmpty(record.downloadURL);
+            record.previewURL = orEmpty(record.previewURL);
+            record.thumbnailURL = orEmpty(record.thumbnailURL);
+        }
+        if (md5) {
+            record.md5 = orEmpty(record.md5);
+        }
+    }
+
+    private static String orEmpty(String value) {
+        return (value != null) ? value : "";
+    }
+
+    private void readChildren(JsonReader reader, Record folder, EntryTable rows,
+                              boolean subfolders) throws IOException {
+        Record child = new Record();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                child.clear();
+                // Children of children are not part of a listing
+                readRecord(reader, child, null);
+                folder.addChild(subfolders, rows.size());
+                rows.add(child.identifier, Entry.typeOf(child.type), child.name, child.parent,
+                        child.hasSize, child.bytes, child.creationDate, child.md5,
+                        child.downloadURL, child.previewURL, child.thumbnailURL, child.metadata);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+    }
+
+    private static Metadata readMetadata(JsonReader reader) throws IOException {
+        Metadata metadata = new Metadata();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (key.equals("height")) {
+                metadata.height = nextString(reader);
+            } else if (key.equals("width")) {
+                metadata.width = nextString(reader);
+            } else if (key.equals("shootingDate")) {
+                metadata.shootingDate = Entry.parseDate(nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return metadata;
+    }
+
+    /**
+     * Read a scalar value as a String, like JSONObject.optString does.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                reader.skipValue();
+                return "";
+        }
+    }
+
+    /**
+     * Read a scalar value as a long, like JSONObject.optLong does.
+     */
+    private static long nextLong(JsonReader reader) throws IOException {
+        String value = nextString(reader);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Raw values of an entry object, reused while reading children.
+     */
+    private static final class Record {
+        String identifier;
+        String type;
+        String name;
+        String parent;
+        String downloadURL;
+        String previewURL;
+        String thumbnailURL;
+        boolean hasSize;
+        long bytes;
+        String creationDate;
+        String md5;
+        Metadata metadata;
+
+        /** Rows of the children read from "subfolders". */
+        private BitSet subfolders;
+
+        void addChild(boolean subfolder, int row) {
+            if (subfolder) {
+                if (subfolders == null) {
+                    subfolders = new BitSet();
+                }
+                subfolders.set(row);
+            }
+        }
+
+        boolean isSubfolder(int row) {
+            return subfolders != null && subfolders.get(row);
+        }
+
+        void clear() {
+            identifier = null;
+            type = null;
+            name = null;
+            parent = null;
+            downloadURL = null;
+            previewURL = null;
+            thumbnailURL = null;
+            hasSize = false;
+            bytes = 0;
+            creationDate = null;
+            md5 = null;
+            metadata = null;
+            subfolders = null;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.OrangeCloudAPI.Metadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Binary snapshot of a tree of entries, read through a memory-mapped file.
+ *
+ * Opening a snapshot only maps the file: an entry is decoded when it is looked up, and the
+ * contents of a folder are decoded child by child when they are accessed, so the last known
+ * tree is available right after a cold start without fetching or parsing any JSON.
+ *
+ * Layout (all integers are big endian):
+ * <pre>
+ * header   magic "OCS1", version, entry count, string count,
+ *          offset of the string table, offset of the entry index, index of the root
+ * strings  for each string, its offset relative to the string data, then the UTF-8 data
+ * entries  one record per entry, fields encoded as varints, strings as string table indexes
+ * index    offset of each record, then the records sorted by identifier
+ * </pre>
+ */
+public final class EntrySnapshot {
+
+    /**
+     * Version of the format written by {@link #write(Entry, File)}.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4F435331;
+    private static final int HEADER_SIZE = 7 * 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Entry.Type[] TYPES = Entry.Type.values();
+
+    private static final int FLAG_SIZE = 1;
+    private static final int FLAG_DATE = 1 << 1;
+    private static final int FLAG_EXTRA_INFOS = 1 << 2;
+    private static final int FLAG_METADATA = 1 << 3;
+    private static final int FLAG_CONTENTS = 1 << 4;
+    private static final int FLAG_SHOOTING_DATE = 1 << 5;
+
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final int stringCount;
+    private final int stringTable;
+    private final int index;
+    private final int root;
+
+    private EntrySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an entry snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        entryCount = buffer.getInt(8);
+        stringCount = buffer.getInt(12);
+        stringTable = buffer.getInt(16);
+        index = buffer.getInt(20);
+        root = buffer.getInt(24);
+        if (stringTable < HEADER_SIZE || index < stringTable
+                || (long) index + 8L * entryCount > buffer.limit()
+                || root < -1 || root >= entryCount) {
+            throw new IOException("Corrupted entry snapshot");
+        }
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @param file a file written by {@link #write(Entry, File)}
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static EntrySnapshot open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // The mapping stays valid once the file is closed
+            return new EntrySnapshot(buffer);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the number of entries of the snapshot
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * @return the root of the tree, null if the snapshot is empty
+     */
+    public Entry getRoot() {
+        return (root < 0) ? null : read(root);
+    }
+
+    /**
+     * Look an entry up by identifier, without decoding the others.
+     *
+     * @param identifier the identifier
+     * @return the entry, null if it is not part of the snapshot
+     */
+    public Entry get(String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        byte[] key = identifier.getBytes(UTF_8);
+        int sorted = index + 4 * entryCount;
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = buffer.getInt(sorted + 4 * middle);
+            int comparison = compareString(identifierOf(record), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return read(record);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write a tree of entries. The file is replaced atomically.
+     *
+     * The children of a lazy listing that are rows of its table are read from the table, so
+     * they are not created. The entries must not be modified while they are written.
+     *
+     * @param root the root of the tree, its loaded contents are written recursively
+     * @param file the destination file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Entry root, File file) throws IOException {
+        Writer writer = new Writer();
+        int rootRecord = (root != null) ? writer.add(root) : -1;
+        byte[] data = writer.toByteArray(rootRecord);
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            output.write(data);
+            output.flush();
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private Entry read(int record) {
+        Cursor cursor = new Cursor(buffer.getInt(index + 4 * record));
+        int flags = cursor.varint();
+        Entry entry = new Entry();
+        int type = cursor.varint();
+        entry.type = (type == 0) ? null : TYPES[type - 1];
+        entry.identifier = Interner.intern(string(cursor.varint()));
+        entry.name = string(cursor.varint());
+        entry.parentIdentifier = Interner.intern(string(cursor.varint()));
+        entry.md5 = string(cursor.varint());
+        entry.setDownloadURL(string(cursor.varint()));
+        entry.setPreviewURL(string(cursor.varint()));
+        entry.setThumbnailURL(string(cursor.varint()));
+        if ((flags & FLAG_SIZE) != 0) {
+            entry.bytes = cursor.varlong();
+            entry.size = Entry.humanReadableByteCount(entry.bytes, true);
+        }
+        if ((flags & FLAG_DATE) != 0) {
+            entry.creationDate = new Date(cursor.zigzag());
+        }
+        if ((flags & FLAG_METADATA) != 0) {
+            Metadata metadata = new Metadata();
+            metadata.height = string(cursor.varint());
+            metadata.width = string(cursor.varint());
+            if ((flags & FLAG_SHOOTING_DATE) != 0) {
+                metadata.shootingDate = new Date(cursor.zigzag());
+            }
+            entry.metadata = metadata;
+        }
+        entry.extraInfoAvailable = (flags & FLAG_EXTRA_INFOS) != 0;
+        if ((flags & FLAG_CONTENTS) != 0) {
+            int count = cursor.varint();
+            int[] children = new int[count];
+            for (int i = 0; i < count; i++) {
+                children[i] = cursor.varint();
+            }
+            entry.contents = new Contents(children);
+        } else if (entry.type == Entry.Type.DIRECTORY) {
+            entry.contents = new ArrayList<Entry>();
+        }
+        return entry;
+    }
+
+    /** Position of the identifier of a record in the string data. */
+    private int identifierOf(int record) {
+        Cursor cursor = new Cursor(buffer.getInt(index + 4 * record));
+        cursor.varint();
+        cursor.varint();
+        return cursor.varint();
+    }
+
+    private String string(int reference) {
+        if (reference == 0) {
+            return null;
+        }
+        int start = stringStart(reference - 1);
+        int end = stringEnd(reference - 1);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private int compareString(int reference, byte[] key) {
+        if (reference == 0) {
+            return -1;
+        }
+        int start = stringStart(reference - 1);
+        int length = stringEnd(reference - 1) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int stringStart(int string) {
+        return stringTable + 4 * (stringCount + 1) + buffer.getInt(stringTable + 4 * string);
+    }
+
+    private int stringEnd(int string) {
+        return stringTable + 4 * (stringCount + 1) + buffer.getInt(stringTable + 4 * (string + 1));
+    }
+
+    /**
+     * Contents of a folder, decoded child by child.
+     */
+    private final class Contents extends AbstractList<Entry> implements RandomAccess {
+
+        private final int[] children;
+        private final Entry[] entries;
+
+        Contents(int[] children) {
+            this.children = children;
+            entries = new Entry[children.length];
+        }
+
+        @Override
+        public Entry get(int position) {
+            Entry entry = entries[position];
+            if (entry == null) {
+                entry = read(children[position]);
+                entries[position] = entry;
+            }
+            return entry;
+        }
+
+        @Override
+        public int size() {
+            return children.length;
+        }
+    }
+
+    /**
+     * Reader of the varints of a record, using absolute positions so that several threads can
+     * read the same buffer.
+     */
+    private final class Cursor {
+
+        private int position;
+
+        Cursor(int position) {
+            this.position = position;
+        }
+
+        int varint() {
+            return (int) varlong();
+        }
+
+        long varlong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long zigzag() {
+            long value = varlong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Encoder of a tree of entries.
+     */
+    private static final class Writer {
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final List<String> stringList = new ArrayList<String>();
+        private final Map<Entry, Integer> records = new IdentityHashMap<Entry, Integer>();
+        private final List<byte[]> encoded = new ArrayList<byte[]>();
+        private final List<String> identifiers = new ArrayList<String>();
+
+        /**
+         * @return the record of the entry
+         */
+        int add(Entry entry) {
+            Integer existing = records.get(entry);
+            if (existing != null) {
+                return existing;
+            }
+            int record = encoded.size();
+            records.put(entry, record);
+            encoded.add(null);
+            identifiers.add(entry.identifier);
+
+            // Children first, so that their records are known
+            int[] children = null;
+            List<Entry> contents = entry.contents;
+            if (contents != null && !contents.isEmpty()) {
+                LazyEntryList lazy = (contents instanceof LazyEntryList)
+                        ? (LazyEntryList) contents : null;
+                children = new int[contents.size()];
+                for (int i = 0; i < children.length; i++) {
+                    int row = (lazy != null) ? lazy.getRow(i) : -1;
+                    children[i] = (row >= 0)
+                            ? addRow(lazy.getTable(), row) : add(contents.get(i));
+                }
+            }
+
+            encoded.set(record, encode(entry.type, entry.identifier, entry.name,
+                    entry.parentIdentifier, entry.md5, entry.getDownloadURL(),
+                    entry.getPreviewURL(), entry.getThumbnailURL(),
+                    (entry.size != null) ? entry.bytes : EntryTable.NO_SIZE,
+                    (entry.creationDate != null) ? entry.creationDate.getTime() : EntryTable.NO_DATE,
+                    entry.extraInfoAvailable, entry.metadata, children));
+            return record;
+        }
+
+        /**
+         * @return the record of a row of a table, without creating its Entry
+         */
+        private int addRow(EntryTable table, int row) {
+            int record = encoded.size();
+            String identifier = table.getIdentifier(row);
+            identifiers.add(identifier);
+            encoded.add(encode(table.getType(row), identifier, table.getName(row),
+                    table.getParentIdentifier(row), table.getMd5(row), table.getDownloadURL(row),
+                    table.getPreviewURL(row), table.getThumbnailURL(row), table.getBytes(row),
+                    table.getCreationTime(row), table.hasExtraInfos(), table.getMetadata(row),
+                    null));
+            return record;
+        }
+
+        private byte[] encode(Entry.Type type, String identifier, String name, String parent,
+                              String md5, String downloadURL, String previewURL,
+                              String thumbnailURL, long bytes, long creationTime,
+                              boolean extraInfos, Metadata metadata, int[] children) {
+            int flags = 0;
+            if (bytes != EntryTable.NO_SIZE) {
+                flags |= FLAG_SIZE;
+            }
+            if (creationTime != EntryTable.NO_DATE) {
+                flags |= FLAG_DATE;
+            }
+            if (extraInfos) {
+                flags |= FLAG_EXTRA_INFOS;
+            }
+            if (metadata != null) {
+                flags |= FLAG_METADATA;
+                if (metadata.shootingDate != null) {
+                    flags |= FLAG_SHOOTING_DATE;
+                }
+            }
+            if (children != null) {
+                flags |= FLAG_CONTENTS;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+            varint(output, flags);
+            varint(output, (type == null) ? 0 : type.ordinal() + 1);
+            varint(output, string(identifier));
+            varint(output, string(name));
+            varint(output, string(parent));
+            varint(output, string(md5));
+            varint(output, string(downloadURL));
+            varint(output, string(previewURL));
+            varint(output, string(thumbnailURL));
+            if ((flags & FLAG_SIZE) != 0) {
+                varint(output, bytes);
+            }
+            if ((flags & FLAG_DATE) != 0) {
+                zigzag(output, creationTime);
+            }
+            if ((flags & FLAG_METADATA) != 0) {
+                varint(output, string(metadata.height));
+                varint(output, string(metadata.width));
+                if ((flags & FLAG_SHOOTING_DATE) != 0) {
+                    zigzag(output, metadata.shootingDate.getTime());
+                }
+            }
+            if (children != null) {
+                varint(output, children.length);
+                for (int child : children) {
+                    varint(output, child);
+                }
+            }
+            return output.toByteArray();
+        }
+
+        byte[] toByteArray(int rootRecord) {
+            // String table
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            int[] offsets = new int[stringList.size() + 1];
+            for (int i = 0; i < stringList.size(); i++) {
+                byte[] bytes = stringList.get(i).getBytes(UTF_8);
+                data.write(bytes, 0, bytes.length);
+                offsets[i + 1] = data.size();
+            }
+
+            int stringTable = HEADER_SIZE;
+            int recordsStart = stringTable + 4 * offsets.length + data.size();
+            int[] recordOffsets = new int[encoded.size()];
+            int position = recordsStart;
+            for (int i = 0; i < encoded.size(); i++) {
+                recordOffsets[i] = position;
+                position += encoded.get(i).length;
+            }
+            int index = position;
+
+            // Records sorted by identifier, for lookups
+            Integer[] sorted = new Integer[encoded.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return compareUtf8(identifiers.get(a), identifiers.get(b));
+                }
+            });
+
+            ByteBuffer file = ByteBuffer.allocate(index + 8 * encoded.size());
+            file.putInt(MAGIC).putInt(VERSION).putInt(encoded.size()).putInt(stringList.size())
+                    .putInt(stringTable).putInt(index).putInt(rootRecord);
+            for (int offset : offsets) {
+                file.putInt(offset);
+            }
+            file.put(data.toByteArray());
+            for (byte[] record : encoded) {
+                file.put(record);
+            }
+            for (int offset : recordOffsets) {
+                file.putInt(offset);
+            }
+            for (Integer record : sorted) {
+                file.putInt(record);
+            }
+            return file.array();
+        }
+
+        private int string(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer reference = strings.get(value);
+            if (reference == null) {
+                stringList.add(value);
+                reference = stringList.size();
+                strings.put(value, reference);
+            }
+            return reference;
+        }
+
+        private static int compareUtf8(String a, String b) {
+            // Null identifiers sort first, as in EntrySnapshot#compareString
+            if (a == null || b == null) {
+                return (a == null) ? ((b == null) ? 0 : -1) : 1;
+            }
+            byte[] x = a.getBytes(UTF_8);
+            byte[] y = b.getBytes(UTF_8);
+            int common = Math.min(x.length, y.length);
+            for (int i = 0; i < common; i++) {
+                int difference = (x[i] & 0xFF) - (y[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return x.length - y.length;
+        }
+
+        private static void varint(ByteArrayOutputStream output, long value) {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+
+        private static void zigzag(ByteArrayOutputStream output, long value) {
+            varint(output, (value << 1) ^ (value >> 63));
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.OrangeCloudAPI.Metadata;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact listing of the children of a folder, one packed array per field.
+ *
+ * Strings are stored as UTF-8 bytes in a single array per field with one end offset per row,
+ * parent identifiers are shared between rows, URLs are split into a shared {@link UrlTemplate}
+ * and a per row suffix, MD5 are kept as 16 raw bytes, and sizes and dates as primitive longs.
+ *
+ * A row costs its identifier and name in UTF-8 plus about 70 bytes: 16 for the MD5, 17 for
+ * the type, size and date, 4 for the parent, 20 of string offsets and 12 of URL template
+ * indexes, plus the URL suffixes. With identifiers of 44 characters, as the server sends them
+ * for photos, this is about 135 bytes per row instead of the kilobyte of an Entry, so a folder
+ * of a hundred thousand photos takes about 13 MB. The values of a row can be read directly
+ * with the getters, or as an Entry created on demand with {@link #entryAt(int)}.
+ *
+ * A table is filled while parsing the listing and is not modified afterwards.
+ */
+public final class EntryTable {
+
+    /**
+     * Value returned by {@link #getBytes(int)} when the size is unknown.
+     */
+    public static final long NO_SIZE = -1;
+
+    /**
+     * Value returned by {@link #getCreationTime(int)} when the date is unknown.
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte NO_TYPE = -1;
+    private static final Entry.Type[] TYPES = Entry.Type.values();
+
+    private final boolean extraInfos;
+
+    private int count;
+    private byte[] types = new byte[16];
+    private long[] bytes = new long[16];
+    private long[] creationTimes = new long[16];
+    /** Index of the parent identifier of each row in {@link #parents}. */
+    private int[] parentIndexes = new int[16];
+    private final ArrayList<String> parents = new ArrayList<String>();
+    private final Map<String, Integer> parentLookup = new HashMap<String, Integer>();
+    private final PackedStrings identifiers = new PackedStrings();
+    private final PackedStrings names = new PackedStrings();
+    private final Md5Column md5s = new Md5Column();
+    /** URL templates shared by the rows, see {@link UrlColumn}. */
+    private final ArrayList<UrlTemplate> templates = new ArrayList<UrlTemplate>();
+    private final Map<UrlTemplate, Integer> templateLookup = new HashMap<UrlTemplate, Integer>();
+    private final UrlColumn downloadURLs = new UrlColumn();
+    private final UrlColumn previewURLs = new UrlColumn();
+    private final UrlColumn thumbnailURLs = new UrlColumn();
+    private Metadata[] metadata;
+
+    /**
+     * @param extraInfos true if the rows come from a response with extra information
+     */
+    EntryTable(boolean extraInfos) {
+        this.extraInfos = extraInfos;
+    }
+
+    /**
+     * Append a row. The date is parsed immediately and only its time is kept.
+     */
+    void add(String identifier, Entry.Type type, String name, String parent,
+             boolean hasSize, long size, String creationDate, String md5,
+             String downloadURL, String previewURL, String thumbnailURL,
+             Metadata childMetadata) {
+        if (count == types.length) {
+            grow();
+        }
+        types[count] = (type == null) ? NO_TYPE : (byte) type.ordinal();
+        bytes[count] = hasSize ? size : NO_SIZE;
+        creationTimes[count] = (creationDate == null || creationDate.length() == 0)
+                ? NO_DATE : Iso8601.parseMillis(creationDate);
+        parentIndexes[count] = parentIndex(parent);
+        identifiers.set(count, identifier);
+        names.set(count, name);
+        md5s.set(count, md5);
+        downloadURLs.set(count, identifier, downloadURL);
+        previewURLs.set(count, identifier, previewURL);
+        thumbnailURLs.set(count, identifier, thumbnailURL);
+        if (childMetadata != null) {
+            if (metadata == null) {
+                metadata = new Metadata[types.length];
+            }
+            metadata[count] = childMetadata;
+        }
+        count++;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param row the row
+     * @return the identifier of the row
+     */
+    public String getIdentifier(int row) {
+        checkRow(row);
+        return identifiers.get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the name of the row, null if it was not parsed
+     */
+    public String getName(int row) {
+        checkRow(row);
+        return names.get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the identifier of the parent folder, null if it was not parsed
+     */
+    public String getParentIdentifier(int row) {
+        checkRow(row);
+        int index = parentIndexes[row];
+        return (index < 0) ? null : parents.get(index);
+    }
+
+    /**
+     * @param row the row
+     * @return the item type of the row, null if unknown
+     */
+    public Entry.Type getType(int row) {
+        checkRow(row);
+        byte type = types[row];
+        return (type == NO_TYPE) ? null : TYPES[type];
+    }
+
+    /**
+     * @param row the row
+     * @return the size in bytes, or {@link #NO_SIZE}
+     */
+    public long getBytes(int row) {
+        checkRow(row);
+        return bytes[row];
+    }
+
+    /**
+     * @param row the row
+     * @return the creation time in milliseconds since the epoch, or {@link #NO_DATE}
+     */
+    public long getCreationTime(int row) {
+        checkRow(row);
+        return creationTimes[row];
+    }
+
+    /**
+     * @param row the row
+     * @return the MD5 of the content, null if it was not parsed
+     */
+    public String getMd5(int row) {
+        checkRow(row);
+        return md5s.get(row);
+    }
+
+    /**
+     * @param row the row
+     * @return the download URL, null if it was not parsed
+     */
+    public String getDownloadURL(int row) {
+        checkRow(row);
+        return downloadURLs.get(row, identifiers.get(row));
+    }
+
+    /**
+     * @param row the row
+     * @return the preview URL, null if it was not parsed
+     */
+    public String getPreviewURL(int row) {
+        checkRow(row);
+        return previewURLs.get(row, identifiers.get(row));
+    }
+
+    /**
+     * @param row the row
+     * @return the thumbnail URL, null if it was not parsed
+     */
+    public String getThumbnailURL(int row) {
+        checkRow(row);
+        return thumbnailURLs.get(row, identifiers.get(row));
+    }
+
+    /**
+     * @param row the row
+     * @return the metadata of the row, null if none
+     */
+    public Metadata getMetadata(int row) {
+        checkRow(row);
+        return (metadata != null) ? metadata[row] : null;
+    }
+
+    /**
+     * @return true if the rows come from a response with extra information
+     */
+    public boolean hasExtraInfos() {
+        return extraInfos;
+    }
+
+    /**
+     * @return the approximate heap used by the table, in bytes
+     */
+    public long estimatedSize() {
+        long size = types.length + 8L * bytes.length + 8L * creationTimes.length
+                + 4L * parentIndexes.length + ((metadata != null) ? 4L * metadata.length : 0)
+                + identifiers.estimatedSize() + names.estimatedSize()
+                + md5s.estimatedSize() + downloadURLs.estimatedSize()
+                + previewURLs.estimatedSize() + thumbnailURLs.estimatedSize();
+        for (String parent : parents) {
+            size += 2 * parent.length();
+        }
+        return size + 64L * templates.size();
+    }
+
+    /**
+     * Create an Entry with the values of a row. Each call returns a new instance.
+     *
+     * @param row the row
+     * @return the Entry
+     */
+    public Entry entryAt(int row) {
+        checkRow(row);
+        Entry entry = new Entry();
+        entry.identifier = Interner.intern(identifiers.get(row));
+        entry.name = names.get(row);
+        entry.parentIdentifier = getParentIdentifier(row);
+        entry.type = getType(row);
+        if (bytes[row] != NO_SIZE) {
+            entry.bytes = bytes[row];
+            entry.size = Entry.humanReadableByteCount(entry.bytes, true);
+        }
+        if (creationTimes[row] != NO_DATE) {
+            entry.creationDate = new Date(creationTimes[row]);
+        }
+        entry.md5 = md5s.get(row);
+        entry.setDownloadURL(downloadURLs.get(row, entry.identifier));
+        entry.setPreviewURL(previewURLs.get(row, entry.identifier));
+        entry.setThumbnailURL(thumbnailURLs.get(row, entry.identifier));
+        entry.metadata = (metadata != null) ? metadata[row] : null;
+        if (entry.type == Entry.Type.DIRECTORY) {
+            entry.contents = new ArrayList<Entry>();
+        }
+        entry.extraInfoAvailable = extraInfos;
+        return entry;
+    }
+
+    /**
+     * Release the spare capacity of the arrays, once every row has been added.
+     */
+    void trimToSize() {
+        types = Arrays.copyOf(types, count);
+        bytes = Arrays.copyOf(bytes, count);
+        creationTimes = Arrays.copyOf(creationTimes, count);
+        parentIndexes = Arrays.copyOf(parentIndexes, count);
+        metadata = (metadata != null) ? Arrays.copyOf(metadata, count) : null;
+        identifiers.trimToSize();
+        names.trimToSize();
+        md5s.trimToSize(count);
+        downloadURLs.trimToSize(count);
+        previewURLs.trimToSize(count);
+        thumbnailURLs.trimToSize(count);
+    }
+
+    private int templateIndex(UrlTemplate template) {
+        Integer index = templateLookup.get(template);
+        if (index == null) {
+            index = templates.size();
+            templates.add(template);
+            templateLookup.put(template, index);
+        }
+        return index;
+    }
+
+    private int parentIndex(String parent) {
+        if (parent == null) {
+            return -1;
+        }
+        Integer index = parentLookup.get(parent);
+        if (index == null) {
+            index = parents.size();
+            parents.add(Interner.intern(parent));
+            parentLookup.put(parent, index);
+        }
+        return index;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + count);
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(types.length * 2, 16);
+        types = Arrays.copyOf(types, capacity);
+        bytes = Arrays.copyOf(bytes, capacity);
+        creationTimes = Arrays.copyOf(creationTimes, capacity);
+        parentIndexes = Arrays.copyOf(parentIndexes, capacity);
+        metadata = (metadata != null) ? Arrays.copyOf(metadata, capacity) : null;
+    }
+
+    /**
+     * URLs of a column, each stored as the index of its template in {@link #templates} and
+     * the suffix of the row. Rows without URL have no template and keep their value (null or
+     * empty) as suffix. Nothing is allocated until a first URL is set.
+     */
+    private final class UrlColumn {
+
+        private int[] templateIndexes;
+        private final PackedStrings suffixes = new PackedStrings();
+
+        void set(int row, String identifier, String url) {
+            int index = -1;
+            String suffix = url;
+            if (url != null && url.length() > 0) {
+                UrlTemplate template = UrlTemplate.of(url, identifier);
+                index = templateIndex(template);
+                suffix = template.suffix(url);
+            }
+            if (templateIndexes == null) {
+                if (index < 0) {
+                    suffixes.set(row, suffix);
+                    return;
+                }
+                templateIndexes = new int[Math.max(16, row + 1)];
+                Arrays.fill(templateIndexes, -1);
+            }
+            if (row >= templateIndexes.length) {
+                int length = templateIndexes.length;
+                templateIndexes = Arrays.copyOf(templateIndexes,
+                        Math.max(length * 2, Math.max(row + 1, 16)));
+                Arrays.fill(templateIndexes, length, templateIndexes.length, -1);
+            }
+            templateIndexes[row] = index;
+            suffixes.set(row, suffix);
+        }
+
+        String get(int row, String identifier) {
+            String suffix = suffixes.get(row);
+            int index = (templateIndexes != null && row < templateIndexes.length)
+                    ? templateIndexes[row] : -1;
+            return (index < 0) ? suffix : templates.get(index).expand(identifier, suffix);
+        }
+
+        long estimatedSize() {
+            return suffixes.estimatedSize()
+                    + ((templateIndexes != null) ? 4L * templateIndexes.length : 0);
+        }
+
+        void trimToSize(int count) {
+            if (templateIndexes != null && templateIndexes.length > count) {
+                templateIndexes = Arrays.copyOf(templateIndexes, count);
+            }
+            suffixes.trimToSize();
+        }
+    }
+
+    /**
+     * MD5 of the rows, stored as 16 raw bytes when it is 32 lower case hexadecimal digits, as
+     * the server sends it. Other values, e.g. null or empty, are kept as strings.
+     */
+    private static final class Md5Column {
+
+        private static final int DIGEST_LENGTH = 16;
+
+        private byte[] digests;
+        /** Rows whose MD5 is stored in {@link #digests}. */
+        private final BitSet binary = new BitSet();
+        private final PackedStrings others = new PackedStrings();
+
+        void set(int row, String md5) {
+            if (!isHex(md5)) {
+                others.set(row, md5);
+                return;
+            }
+            int needed = (row + 1) * DIGEST_LENGTH;
+            if (digests == null) {
+                digests = new byte[Math.max(16 * DIGEST_LENGTH, needed)];
+            } else if (needed > digests.length) {
+                digests = Arrays.copyOf(digests, Math.max(digests.length * 2, needed));
+            }
+            int offset = row * DIGEST_LENGTH;
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                digests[offset + i] = (byte) ((Character.digit(md5.charAt(2 * i), 16) << 4)
+                        | Character.digit(md5.charAt(2 * i + 1), 16));
+            }
+            binary.set(row);
+            others.set(row, null);
+        }
+
+        String get(int row) {
+            if (!binary.get(row)) {
+                return others.get(row);
+            }
+            char[] hex = new char[2 * DIGEST_LENGTH];
+            int offset = row * DIGEST_LENGTH;
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                byte b = digests[offset + i];
+                hex[2 * i] = Character.forDigit((b >> 4) & 0xf, 16);
+                hex[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+            }
+            return new String(hex);
+        }
+
+        long estimatedSize() {
+            return ((digests != null) ? digests.length : 0) + binary.size() / 8
+                    + others.estimatedSize();
+        }
+
+        void trimToSize(int count) {
+            if (digests != null && digests.length > count * DIGEST_LENGTH) {
+                digests = Arrays.copyOf(digests, count * DIGEST_LENGTH);
+            }
+            others.trimToSize();
+        }
+
+        private static boolean isHex(String md5) {
+            if (md5 == null || md5.length() != 2 * DIGEST_LENGTH) {
+                return false;
+            }
+            for (int i = 0; i < md5.length(); i++) {
+                char c = md5.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Strings of a column, stored as UTF-8 in a single byte array. Nothing is allocated until
+     * a first non null value is set.
+     */
+    private static final class PackedStrings {
+
+        private byte[] data;
+        private int length;
+        /**
+         * End of each row in {@link #data}, its start being the end of the previous row. Null
+         * values are stored as the complement of their end, they are empty.
+         */
+        private int[] ends;
+        private int count;
+
+        void set(int row, String value) {
+            if (value == null && ends == null) {
+                return;
+            }
+            if (ends == null) {
+                data = new byte[256];
+                ends = new int[Math.max(16, row + 1)];
+            }
+            if (row >= ends.length) {
+                ends = Arrays.copyOf(ends, Math.max(ends.length * 2, Math.max(row + 1, 16)));
+            }
+            // Rows skipped while the column was empty are null
+            while (count < row) {
+                ends[count++] = ~length;
+            }
+            if (value == null) {
+                ends[row] = ~length;
+            } else {
+                byte[] encoded = value.getBytes(UTF_8);
+                if (length + encoded.length > data.length) {
+                    data = Arrays.copyOf(data, Math.max(data.length * 2, length + encoded.length));
+                }
+                System.arraycopy(encoded, 0, data, length, encoded.length);
+                length += encoded.length;
+                ends[row] = length;
+            }
+            count = row + 1;
+        }
+
+        long estimatedSize() {
+            return (ends != null) ? data.length + 4L * ends.length : 0;
+        }
+
+        void trimToSize() {
+            if (ends != null) {
+                data = Arrays.copyOf(data, length);
+                ends = Arrays.copyOf(ends, count);
+            }
+        }
+
+        String get(int row) {
+            if (row >= count || ends[row] < 0) {
+                return null;
+            }
+            int start = (row == 0) ? 0 : end(ends[row - 1]);
+            return new String(data, start, ends[row] - start, UTF_8);
+        }
+
+        private static int end(int value) {
+            return (value < 0) ? ~value : value;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+/**
+ * Free space of the account, as last returned by the server and adjusted locally by the
+ * uploads, copies and deletes made since.
+ *
+ * {@link OrangeCloudAPI#freespace(OrangeListener.Success, OrangeListener.Error)} answers from
+ * the tracker while its value is younger than the time to live, then asks the server again,
+ * which corrects the changes made by other clients or not known locally.
+ */
+public final class FreespaceTracker {
+
+    /**
+     * Value returned when no free space is known.
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Default time after which the free space is asked to the server again.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+
+    private long freespace = UNKNOWN;
+    /** Time of the request that returned the value. */
+    private long time;
+    /** Number of local changes, to know whether one happened during a request. */
+    private long changes;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * @param timeToLive time after which the free space is asked to the server again, in
+     *                   milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("timeToLive must not be negative.");
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Free space without asking the server, e.g. to check the quota before each file of an
+     * upload loop.
+     *
+     * @return the free space in bytes, or {@link #UNKNOWN} if it has not been returned by the
+     * server yet or is older than the time to live
+     */
+    public synchronized long getFreespace() {
+        if (freespace == UNKNOWN || System.currentTimeMillis() - time >= timeToLive) {
+            return UNKNOWN;
+        }
+        return freespace;
+    }
+
+    /**
+     * Forget the free space, so that the next call asks the server.
+     */
+    public synchronized void invalidate() {
+        freespace = UNKNOWN;
+        changes++;
+    }
+
+    /**
+     * @return a token to pass to {@link #set(long, long, long)} with the response of a request
+     * sent now
+     */
+    synchronized long changes() {
+        return changes;
+    }
+
+    /**
+     * Store the free space returned by the server.
+     *
+     * @param value       the free space in bytes
+     * @param requestTime time the request was sent
+     * @param token       value of {@link #changes()} when the request was sent
+     */
+    synchronized void set(long value, long requestTime, long token) {
+        freespace = value;
+        // Changes made during the request may not be counted by the server: ask again next time
+        time = (token == changes) ? requestTime : 0;
+    }
+
+    /**
+     * Account for a change made by this client.
+     *
+     * @param bytes bytes freed, negative for bytes used
+     */
+    synchronized void adjust(long bytes) {
+        if (freespace != UNKNOWN) {
+            freespace = Math.max(0, freespace + bytes);
+        }
+        changes++;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Size and configuration an image is decoded for.
+ *
+ * Images are subsampled while decoding so that they are not much larger than the target,
+ * e.g. a 96 px list icon in RGB_565 takes a few dozen kilobytes instead of a full screen
+ * ARGB_8888 bitmap.
+ */
+public final class ImageTarget {
+
+    /**
+     * Targets whose width and height are both up to this size are served from the thumbnail
+     * of an entry, larger ones from its preview.
+     */
+    public static final int THUMBNAIL_MAX_SIZE = 256;
+
+    /**
+     * The size of the screen, in the default configuration.
+     */
+    public static final ImageTarget SCREEN = new ImageTarget(0, 0, null);
+
+    private final int width;
+    private final int height;
+    private final Bitmap.Config config;
+
+    /**
+     * @param width  width of the target in pixels, 0 for the width of the screen
+     * @param height height of the target in pixels, 0 for the height of the screen
+     * @param config configuration of the bitmap, null for the default one
+     */
+    public ImageTarget(int width, int height, Bitmap.Config config) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("width and height must not be negative.");
+        }
+        this.width = width;
+        this.height = height;
+        this.config = config;
+    }
+
+    /**
+     * @return width of the target in pixels, 0 for the width of the screen
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the target in pixels, 0 for the height of the screen
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return configuration of the bitmap, null for the default one
+     */
+    public Bitmap.Config getConfig() {
+        return config;
+    }
+
+    /**
+     * @return true if the thumbnail of an entry is large enough for this target
+     */
+    public boolean fitsThumbnail() {
+        return width > 0 && height > 0
+                && width <= THUMBNAIL_MAX_SIZE && height <= THUMBNAIL_MAX_SIZE;
+    }
+
+    /**
+     * Suffix of the memory cache key of an image decoded for this target.
+     */
+    String cacheSuffix() {
+        return "@" + width + "x" + height + ((config != null) ? config.name() : "");
+    }
+
+    /**
+     * Target of an image decoded in memory, read back from its cache key.
+     *
+     * @param memoryKey the memory cache key, ending with {@link #cacheSuffix()}
+     * @return the target, null if the key has no valid suffix
+     */
+    static ImageTarget fromMemoryKey(String memoryKey) {
+        int start = memoryKey.lastIndexOf('@');
+        int separator = memoryKey.indexOf('x', start);
+        if (start < 0 || separator < 0) {
+            return null;
+        }
+        int end = separator + 1;
+        while (end < memoryKey.length() && Character.isDigit(memoryKey.charAt(end))) {
+            end++;
+        }
+        try {
+            int width = Integer.parseInt(memoryKey.substring(start + 1, separator));
+            int height = Integer.parseInt(memoryKey.substring(separator + 1, end));
+            Bitmap.Config config = (end < memoryKey.length())
+                    ? Bitmap.Config.valueOf(memoryKey.substring(end)) : null;
+            return new ImageTarget(width, height, config);
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    /**
+     * Decode an image for a size, subsampling it by the largest power of two that keeps it at
+     * least as large as the size.
+     *
+     * @param data      the encoded image
+     * @param maxWidth  target width in pixels
+     * @param maxHeight target height in pixels
+     * @param config    configuration of the bitmap, null for the default one
+     * @param pool      pool of the bitmap to decode into, null to allocate a new one
+     * @return the bitmap, null if the data cannot be decoded
+     */
+    static Bitmap decode(byte[] data, int maxWidth, int maxHeight, Bitmap.Config config,
+                         BitmapPool pool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, maxWidth, maxHeight);
+        options.inPreferredConfig = config;
+        if (pool != null) {
+            // Rounded up, the decoded size is at most one pixel off
+            int sample = options.inSampleSize;
+            options.inMutable = true;
+            options.inBitmap = pool.take((options.outWidth + sample - 1) / sample,
+                    (options.outHeight + sample - 1) / sample, config, sample);
+            if (options.inBitmap != null) {
+                try {
+                    return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap does not fit this image after all, it is dropped
+                    options.inBitmap = null;
+                }
+            }
+        }
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    static int sampleSize(int width, int height, int maxWidth, int maxHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= maxWidth && height / (sampleSize * 2) >= maxHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonical instances of immutable values, such as identifiers repeated across entries.
+ *
+ * Values are only weakly referenced: an instance no longer used by any entry is released by
+ * the garbage collector and dropped from the pool.
+ */
+final class Interner {
+
+    private static final Map<Object, WeakReference<Object>> pool =
+            new WeakHashMap<Object, WeakReference<Object>>();
+
+    private Interner() {
+    }
+
+    /**
+     * @param value an immutable value, may be null
+     * @return the canonical instance equal to {@code value}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (pool) {
+            WeakReference<Object> reference = pool.get(value);
+            Object canonical = (reference != null) ? reference.get() : null;
+            if (canonical != null) {
+                return (T) canonical;
+            }
+            pool.put(value, new WeakReference<Object>(value));
+            return value;
+        }
+    }
+}
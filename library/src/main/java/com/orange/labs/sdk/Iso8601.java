@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import java.util.Date;
+
+/**
+ * Parser of the dates returned by the Cloud Api ({@code yyyy-MM-dd'T'HH:mm:ssZZZ}).
+ *
+ * Unlike SimpleDateFormat, it can be called from any thread, and the epoch time is computed
+ * arithmetically without any Calendar. The offset can be written {@code +0100}, {@code +01:00} or
+ * {@code Z}, and optional milliseconds are accepted. The last parsed timestamps are kept in
+ * a small cache, as many entries of a folder share the same dates.
+ */
+public final class Iso8601 {
+
+    private static final int CACHE_SIZE = 256;
+
+    /** Last parsed dates, indexed by the hash of their text. */
+    private static final Parsed[] cache = new Parsed[CACHE_SIZE];
+
+    private Iso8601() {
+    }
+
+    /**
+     * Parse a date returned by the Cloud Api.
+     *
+     * @param text the date
+     * @return a new Date, or null if the text is empty or is not a valid date
+     */
+    public static Date parse(String text) {
+        if (text == null || text.length() == 0) {
+            return null;
+        }
+        long time = parseMillis(text);
+        return (time == Long.MIN_VALUE) ? null : new Date(time);
+    }
+
+    /**
+     * Parse a date returned by the Cloud Api.
+     *
+     * @param text the date
+     * @return the number of milliseconds since the epoch, or Long.MIN_VALUE if the text is
+     * not a valid date
+     */
+    public static long parseMillis(String text) {
+        int slot = text.hashCode() & (CACHE_SIZE - 1);
+        Parsed parsed = cache[slot];
+        if (parsed != null && parsed.text.equals(text)) {
+            return parsed.time;
+        }
+
+        long time = compute(text);
+        if (time != Long.MIN_VALUE) {
+            // Parsed is immutable, a racy publication is fine
+            cache[slot] = new Parsed(text, time);
+        }
+        return time;
+    }
+
+    private static long compute(String text) {
+        int length = text.length();
+        if (length < 19
+                || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || (text.charAt(10) != 'T' && text.charAt(10) != ' ')
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return Long.MIN_VALUE;
+        }
+
+        int position = 19;
+        int millis = 0;
+        if (position < length && text.charAt(position) == '.') {
+            position++;
+            int scale = 100;
+            while (position < length && isDigit(text.charAt(position))) {
+                millis += (text.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+
+        int offset = 0;
+        if (position < length) {
+            char sign = text.charAt(position);
+            if (sign == 'Z' && position + 1 == length) {
+                offset = 0;
+            } else if (sign == '+' || sign == '-') {
+                int offsetHour = digits(text, position + 1, 2);
+                int minuteStart = position + 3;
+                if (minuteStart < length && text.charAt(minuteStart) == ':') {
+                    minuteStart++;
+                }
+                int offsetMinute = digits(text, minuteStart, 2);
+                if (offsetHour < 0 || offsetMinute < 0 || minuteStart + 2 != length) {
+                    return Long.MIN_VALUE;
+                }
+                offset = (offsetHour * 60 + offsetMinute) * 60 * 1000;
+                if (sign == '-') {
+                    offset = -offset;
+                }
+            } else {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        long days = daysFromCivil(year, month, day);
+        long seconds = ((days * 24 + hour) * 60 + minute) * 60 + second;
+        return seconds * 1000 + millis - offset;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= (month <= 2) ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(String text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static final class Parsed {
+        final String text;
+        final long time;
+
+        Parsed(String text, long time) {
+            this.text = text;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.net.Uri;
+
+import com.orange.labs.sdk.OfflineJournal.Operation;
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.exception.CloudAPIException;
+import com.orange.labs.sdk.exception.OrangeAPIException;
+
+import org.json.JSONObject;
+
+/**
+ * Send the modifications of an {@link OfflineJournal} to the server, one at a time and in
+ * order, when the device is online. A modification the server refuses (4xx) is reported as a
+ * conflict and skipped. Replay stops at any other error, e.g. no network, a server error or
+ * an expired session, keeping the modification, and starts again when the connectivity comes
+ * back. A modification failing {@link #MAX_FAILURES} times while the device is online, e.g.
+ * because of a persistent server error or a missing upload copy, is reported as a conflict so
+ * that it does not block the journal. Runs on the main thread.
+ */
+final class JournalReplay implements ConnectivityMonitor.Listener {
+
+    /** Failures of a modification, while online, before it is given up. */
+    static final int MAX_FAILURES = 5;
+
+    private final OrangeCloudAPI<?> api;
+    private final OfflineJournal journal;
+    private boolean running;
+    /** Modification that last failed, and the number of times it failed. */
+    private Operation failed;
+    private int failures;
+
+    JournalReplay(OrangeCloudAPI<?> api, OfflineJournal journal) {
+        this.api = api;
+        this.journal = journal;
+    }
+
+    @Override
+    public void onConnectivityChanged(boolean online) {
+        if (online) {
+            start();
+        }
+    }
+
+    /**
+     * Send the pending modifications, unless they are already being sent.
+     */
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        next();
+    }
+
+    private void next() {
+        Operation operation = journal.peek();
+        if (operation == null || !api.isOnline()) {
+            running = false;
+            return;
+        }
+        send(operation);
+    }
+
+    private void send(final Operation operation) {
+        OrangeListener.Error failure = new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                if (!isRefusal(error.getStatusCode())) {
+                    if (api.isOnline()) {
+                        failures = (failed == operation) ? failures + 1 : 1;
+                        failed = operation;
+                    }
+                    if (failed != operation || failures < MAX_FAILURES) {
+                        // No answer, server or session error: keep the modification and try
+                        // again when the network comes back or another one is appended
+                        running = false;
+                        return;
+                    }
+                }
+                conflict(operation, error);
+            }
+        };
+        OrangeListener.Success<Entry> replayed = new OrangeListener.Success<Entry>() {
+            @Override
+            public void onResponse(Entry response) {
+                if (operation.getType() == Operation.Type.CREATE_FOLDER) {
+                    journal.mapIdentifier(operation.getIdentifier(), response.identifier);
+                }
+                done(operation, response);
+            }
+        };
+
+        // Folders created offline are only known by their local identifier until replayed
+        String identifier = journal.resolve(operation.getIdentifier());
+        String parent = journal.resolve(operation.getParentIdentifier());
+        String destination = journal.resolve(operation.getDestinationIdentifier());
+        if ((operation.getIdentifier() != null && identifier == null
+                && operation.getType() != Operation.Type.CREATE_FOLDER)
+                || (operation.getParentIdentifier() != null && parent == null)
+                || (operation.getDestinationIdentifier() != null && destination == null)) {
+            conflict(operation, new CloudAPIException(404, "", "Folder not created on the server", ""));
+            return;
+        }
+
+        switch (operation.getType()) {
+            case CREATE_FOLDER:
+                api.forgetProvisional(operation.getParentIdentifier(), operation.getIdentifier());
+                api.sendCreateFolder(folder(parent), operation.getName(), replayed, failure);
+                break;
+            case RENAME:
+                api.sendRename(entry(identifier, operation.isFolder(), parent), operation.getName(),
+                        replayed, failure);
+                break;
+            case MOVE:
+                api.sendMove(entry(identifier, operation.isFolder(), parent), folder(destination),
+                        replayed, failure);
+                break;
+            case DELETE:
+                api.sendDelete(entry(identifier, operation.isFolder(), parent),
+                        new OrangeListener.Success<String>() {
+                            @Override
+                            public void onResponse(String response) {
+                                done(operation, null);
+                            }
+                        }, failure);
+                break;
+            case UPLOAD:
+                api.sendUpload(Uri.parse(operation.getUri()), operation.getName(), folder(parent),
+                        new OrangeListener.Success<JSONObject>() {
+                            @Override
+                            public void onResponse(JSONObject response) {
+                                done(operation, null);
+                            }
+                        }, new OrangeListener.Progress() {
+                            @Override
+                            public void onProgress(float ratio) {
+                            }
+                        }, failure);
+                break;
+        }
+    }
+
+    private void done(Operation operation, Entry result) {
+        forget(operation);
+        journal.removeFirst();
+        OfflineJournal.Listener listener = journal.getListener();
+        if (listener != null) {
+            listener.onReplayed(operation, result);
+        }
+        next();
+    }
+
+    private void conflict(Operation operation, OrangeAPIException error) {
+        forget(operation);
+        journal.removeFirst();
+        OfflineJournal.Listener listener = journal.getListener();
+        if (listener != null) {
+            listener.onConflict(operation, error);
+        }
+        next();
+    }
+
+    private void forget(Operation operation) {
+        if (failed == operation) {
+            failed = null;
+            failures = 0;
+        }
+    }
+
+    /**
+     * @return true if the server refused the modification itself, e.g. because the entry no
+     * longer exists (404), was changed by another client (409) or cannot be modified (403).
+     * Authentication errors, timeouts and too many requests are not refusals.
+     */
+    private static boolean isRefusal(int statusCode) {
+        return statusCode >= 400 && statusCode < 500
+                && statusCode != 401 && statusCode != 408 && statusCode != 429;
+    }
+
+    private static Entry entry(String identifier, boolean folder, String parent) {
+        Entry entry = new Entry();
+        entry.identifier = identifier;
+        entry.type = folder ? Entry.Type.DIRECTORY : Entry.Type.FILE;
+        entry.parentIdentifier = parent;
+        return entry;
+    }
+
+    private static Entry folder(String identifier) {
+        return (identifier != null) ? entry(identifier, true, null) : null;
+    }
+}
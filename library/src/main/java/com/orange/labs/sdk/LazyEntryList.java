@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Contents of a folder whose children are only created when they are accessed.
+ *
+ * The values of the children are kept in an {@link EntryTable} until {@link #get(int)} is
+ * called for a position, so showing the visible rows of a huge folder only creates a few Entry
+ * objects. The size and the type of every child are known up front. Once created, a child
+ * is kept: the same position always returns the same instance.
+ */
+public final class LazyEntryList extends AbstractList<Entry> implements RandomAccess {
+
+    private final EntryTable table;
+
+    /** Row of each position in {@link #table}, -1 for entries added after parsing. */
+    private int[] slots;
+    /** Entries already created, by position. */
+    private Entry[] entries;
+    private int size;
+    /** Map the created children are resolved through, may be null. */
+    private EntryIdentityMap identities;
+
+    /**
+     * @param table values of the children
+     * @param order row of each position
+     */
+    LazyEntryList(EntryTable table, int[] order) {
+        this.table = table;
+        size = order.length;
+        slots = Arrays.copyOf(order, Math.max(size, 4));
+        entries = new Entry[slots.length];
+    }
+
+    /**
+     * Copy of a list, sharing its table and the children already created.
+     *
+     * @param other the list to copy
+     */
+    LazyEntryList(LazyEntryList other) {
+        table = other.table;
+        size = other.size;
+        slots = Arrays.copyOf(other.slots, Math.max(size, 4));
+        entries = Arrays.copyOf(other.entries, slots.length);
+        identities = other.identities;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Entry get(int index) {
+        checkIndex(index);
+        Entry entry = entries[index];
+        if (entry == null) {
+            entry = table.entryAt(slots[index]);
+            if (identities != null) {
+                entry = identities.resolve(entry, false);
+            }
+            entries[index] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Type of the child at a position, without creating it.
+     *
+     * @param index position of the child
+     * @return the item type of the child
+     */
+    public Entry.Type getType(int index) {
+        checkIndex(index);
+        Entry entry = entries[index];
+        return (entry != null) ? entry.type : table.getType(slots[index]);
+    }
+
+    /**
+     * Identifier of the child at a position, without creating it.
+     *
+     * @param index position of the child
+     * @return the identifier of the child
+     */
+    public String getIdentifier(int index) {
+        checkIndex(index);
+        Entry entry = entries[index];
+        return (entry != null) ? entry.identifier : table.getIdentifier(slots[index]);
+    }
+
+    /**
+     * Name of the child at a position, without creating it.
+     *
+     * @param index position of the child
+     * @return the name of the child, null if it was not parsed
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        Entry entry = entries[index];
+        return (entry != null) ? entry.name : table.getName(slots[index]);
+    }
+
+    /**
+     * Count the children of a type, without creating them.
+     *
+     * @param type the item type
+     * @return the number of children of this type
+     */
+    public int countOf(Entry.Type type) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (getType(i) == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param index position of the child
+     * @return true if the child at this position has already been created
+     */
+    public boolean isMaterialized(int index) {
+        checkIndex(index);
+        return entries[index] != null;
+    }
+
+    /**
+     * Resolve children to their canonical instance when they are created.
+     *
+     * @param identities the identity map of the API
+     */
+    void setIdentityMap(EntryIdentityMap identities) {
+        this.identities = identities;
+    }
+
+    /**
+     * @return the compact table holding the children as listed by the server
+     */
+    public EntryTable getTable() {
+        return table;
+    }
+
+    /**
+     * Row of a child in {@link #getTable()}.
+     *
+     * @param index position of the child
+     * @return the row, or -1 if the child was added or replaced after the listing
+     */
+    public int getRow(int index) {
+        checkIndex(index);
+        return slots[index];
+    }
+
+    @Override
+    public Entry set(int index, Entry entry) {
+        Entry previous = get(index);
+        entries[index] = entry;
+        slots[index] = -1;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Entry entry) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == slots.length) {
+            int capacity = slots.length + (slots.length >> 1) + 1;
+            slots = Arrays.copyOf(slots, capacity);
+            entries = Arrays.copyOf(entries, capacity);
+        }
+        System.arraycopy(slots, index, slots, index + 1, size - index);
+        System.arraycopy(entries, index, entries, index + 1, size - index);
+        slots[index] = -1;
+        entries[index] = entry;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Entry remove(int index) {
+        Entry previous = get(index);
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+        size--;
+        entries[size] = null;
+        modCount++;
+        return previous;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
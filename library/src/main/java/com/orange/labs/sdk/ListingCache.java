@@ -0,0 +1,704 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache of folder listings, in memory and on disk, used by
+ * {@link OrangeCloudAPI#listEntries(Entry, JSONObject, OrangeListener.Success, OrangeListener.Revalidation, OrangeListener.Error)}.
+ *
+ * Listings are keyed by folder identifier and query parameters. A cached listing is returned
+ * at once; when it is older than the time to live, it is also revalidated against the server.
+ * Listings are written to disk as {@link EntrySnapshot} files, so they survive a restart.
+ */
+public final class ListingCache implements MemoryGovernor.Trimmable {
+
+    /**
+     * Default time during which a listing is returned without being revalidated.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 30 * 1000;
+
+    /**
+     * Default number of listings kept in memory.
+     */
+    public static final int DEFAULT_MAX_MEMORY_ENTRIES = 32;
+
+    /**
+     * Default size of the listings kept on disk.
+     */
+    public static final long DEFAULT_MAX_DISK_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Parameters that change how the children of a folder are described, not which children
+     * are listed. Changes made by this client can be applied to the listings that only use
+     * these parameters.
+     */
+    private static final Set<String> PRESENTATION_PARAMETERS =
+            new HashSet<String>(Arrays.asList("showthumbnails"));
+
+    /** Keys of the listings in memory, least recently used first, to warm the next start up. */
+    private static final String RECENT_FILE = "recent";
+
+    private final File directory;
+    private final LinkedHashMap<String, Listing> memory =
+            new LinkedHashMap<String, Listing>(16, 0.75f, true);
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile int maxMemoryEntries = DEFAULT_MAX_MEMORY_ENTRIES;
+    private volatile long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+
+    /**
+     * @param directory directory of the cached listings, created if needed. It should not be
+     *                  used for anything else.
+     */
+    public ListingCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param millis time during which a listing is returned without being revalidated
+     */
+    public void setTimeToLive(long millis) {
+        timeToLive = millis;
+    }
+
+    /**
+     * @param count number of listings kept in memory
+     */
+    public void setMaxMemoryEntries(int count) {
+        maxMemoryEntries = count;
+        synchronized (memory) {
+            trimMemory();
+        }
+    }
+
+    /**
+     * @param bytes size of the listings kept on disk
+     */
+    public void setMaxDiskSize(long bytes) {
+        maxDiskSize = bytes;
+    }
+
+    /**
+     * Remove every cached listing.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove the cached listings of a folder, whatever their parameters.
+     *
+     * @param folderIdentifier identifier of the folder, "" for the root
+     */
+    public void invalidate(String folderIdentifier) {
+        final String prefix = folderIdentifier + "?";
+        synchronized (memory) {
+            Iterator<String> iterator = memory.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+        }
+        deleteFiles(prefix);
+    }
+
+    /**
+     * Apply a change made by this client to the cached listings of a folder, so that they are
+     * up to date without being requested again. Listings of the folder whose parameters select
+     * or page the children are dropped instead, as the change may not apply to them.
+     *
+     * @param folderIdentifier  identifier of the folder
+     * @param removedIdentifier identifier of a child to remove, null for none
+     * @param added             a child to add, null for none
+     * @return the updated folders by key of their listing, empty if no listing of the folder
+     * was in memory
+     */
+    Map<String, Entry> update(String folderIdentifier, String removedIdentifier, Entry added) {
+        Map<String, Entry> updated = new LinkedHashMap<String, Entry>();
+        Set<String> folderKeys = new HashSet<String>();
+        synchronized (memory) {
+            Iterator<Map.Entry<String, Listing>> iterator = memory.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Listing> cached = iterator.next();
+                String key = cached.getKey();
+                Entry folder = cached.getValue().entry;
+                // The root is listed with an empty identifier
+                if (!key.startsWith(folderIdentifier + "?")
+                        && !folderIdentifier.equals(folder.identifier)) {
+                    continue;
+                }
+                folderKeys.add(key.substring(0, key.indexOf('?') + 1));
+                if (isPresentationOnly(key)) {
+                    updated.put(key, withChange(folder, removedIdentifier, added));
+                } else {
+                    iterator.remove();
+                }
+            }
+        }
+        // Listings only on disk are outdated, the updated ones are written again
+        for (String folderKey : folderKeys) {
+            deleteFiles(folderKey);
+        }
+        for (Map.Entry<String, Entry> listing : updated.entrySet()) {
+            put(listing.getKey(), listing.getValue());
+        }
+        return updated;
+    }
+
+    /**
+     * Parameters of a listing, as found in its key.
+     */
+    static JSONObject parameters(String key) {
+        JSONObject parameters = new JSONObject();
+        String query = key.substring(key.indexOf('?') + 1);
+        try {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return parameters;
+    }
+
+    /**
+     * Key of a listing.
+     */
+    static String key(String folderIdentifier, JSONObject parameters) {
+        StringBuilder key = new StringBuilder(folderIdentifier).append('?');
+        if (parameters != null) {
+            List<String> names = new ArrayList<String>();
+            Iterator<String> iterator = parameters.keys();
+            while (iterator.hasNext()) {
+                names.add(iterator.next());
+            }
+            Collections.sort(names);
+            try {
+                for (String name : names) {
+                    key.append(name).append('=').append(parameters.get(name)).append('&');
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key key of the listing
+     * @return the listing cached in memory, null if none
+     */
+    Listing peek(String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    /**
+     * Look a listing up in memory, then on disk in the background.
+     *
+     * @param key      key of the listing
+     * @param callback called with the cached listing, null if none. Called at once if the
+     *                 listing is in memory, else on the main thread once the disk is read.
+     */
+    void get(final String key, final OrangeListener.Success<Listing> callback) {
+        Listing listing = peek(key);
+        if (listing != null) {
+            callback.onResponse(listing);
+            return;
+        }
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Listing listing = get(key);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResponse(listing);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Must not be called from the main thread, see {@link #get(String, OrangeListener.Success)}.
+     *
+     * @param key key of the listing
+     * @return the cached listing, from memory or from disk, null if none
+     */
+    Listing get(String key) {
+        synchronized (memory) {
+            Listing listing = memory.get(key);
+            if (listing != null) {
+                return listing;
+            }
+        }
+        File file = new File(directory, fileName(key));
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Entry entry = EntrySnapshot.open(file).getRoot();
+            if (entry == null) {
+                return null;
+            }
+            Listing listing = new Listing(entry, file.lastModified());
+            synchronized (memory) {
+                memory.put(key, listing);
+                trimMemory();
+            }
+            return listing;
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        } catch (RuntimeException e) {
+            // A truncated or corrupt snapshot is a miss
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Open, in the background, the listings that were in memory when the application was
+     * last used, so that the first listings after a start up do not wait for the disk.
+     */
+    void warm() {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = new File(directory, RECENT_FILE);
+                if (!file.isFile()) {
+                    return;
+                }
+                try {
+                    // Least recently used first, so that the order of the memory is restored
+                    for (String key : FileUtils.readFileToString(file, "UTF-8").split("\n")) {
+                        if (key.length() > 0) {
+                            get(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Store a listing received from the server.
+     *
+     * @param key   key of the listing
+     * @param entry the folder and its contents
+     */
+    void put(String key, Entry entry) {
+        final Listing listing = new Listing(detached(entry), System.currentTimeMillis());
+        final StringBuilder recent = new StringBuilder();
+        synchronized (memory) {
+            memory.put(key, listing);
+            trimMemory();
+            for (String memoryKey : memory.keySet()) {
+                recent.append(memoryKey).append('\n');
+            }
+        }
+        final File file = new File(directory, fileName(key));
+        final Entry snapshot = frozen(listing.entry);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        return;
+                    }
+                    EntrySnapshot.write(snapshot, file);
+                    file.setLastModified(listing.time);
+                    FileUtils.writeStringToFile(new File(directory, RECENT_FILE),
+                            recent.toString(), "UTF-8");
+                    trimDisk();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param listing a cached listing
+     * @return true if the listing is older than the time to live
+     */
+    boolean isStale(Listing listing) {
+        return System.currentTimeMillis() - listing.time >= timeToLive;
+    }
+
+    /**
+     * @param parameters parameters of a listing, may be null
+     * @return true if the listing returns every child of the folder, i.e. it has no parameter
+     * other than the presentation ones
+     */
+    static boolean isFullListing(JSONObject parameters) {
+        if (parameters == null) {
+            return true;
+        }
+        Iterator<String> keys = parameters.keys();
+        while (keys.hasNext()) {
+            if (!PRESENTATION_PARAMETERS.contains(keys.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy of a folder with its own list of children, so that a cached listing does not change
+     * with the canonical folder, nor the canonical folder with the cache.
+     */
+    static Entry detached(Entry folder) {
+        Entry copy = new Entry();
+        copy.identifier = folder.identifier;
+        copy.updateFrom(folder, false);
+        copy.stale = folder.stale;
+        if (folder.contents instanceof LazyEntryList) {
+            copy.contents = new LazyEntryList((LazyEntryList) folder.contents);
+        } else if (folder.contents != null) {
+            copy.contents = new ArrayList<Entry>(folder.contents);
+        }
+        return copy;
+    }
+
+    /**
+     * Copy of a cached folder to write in the background. The rows of a lazy listing are read
+     * from its immutable table; the other children are copied here, on the calling thread, as
+     * they may be canonical entries updated on the main thread.
+     */
+    private static Entry frozen(Entry folder) {
+        Entry copy = detached(folder);
+        if (copy.contents == null) {
+            return copy;
+        }
+        LazyEntryList lazy = (copy.contents instanceof LazyEntryList)
+                ? (LazyEntryList) copy.contents : null;
+        for (int i = 0; i < copy.contents.size(); i++) {
+            if (lazy != null && lazy.getRow(i) >= 0) {
+                continue;
+            }
+            Entry child = copy.contents.get(i);
+            Entry childCopy = new Entry();
+            childCopy.identifier = child.identifier;
+            childCopy.updateFrom(child, false);
+            copy.contents.set(i, childCopy);
+        }
+        return copy;
+    }
+
+    private static boolean isPresentationOnly(String key) {
+        String query = key.substring(key.indexOf('?') + 1);
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && !PRESENTATION_PARAMETERS.contains(parameter.substring(0, separator))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy of a folder with a child removed and another one added. A child replacing itself
+     * keeps its position, other directories are added after the existing directories and
+     * files at the end, like the server lists them.
+     */
+    static Entry withChange(Entry folder, String removedIdentifier, Entry added) {
+        Entry copy = new Entry();
+        copy.identifier = folder.identifier;
+        copy.updateFrom(folder, false);
+        List<Entry> contents;
+        if (folder.contents instanceof LazyEntryList) {
+            contents = new LazyEntryList((LazyEntryList) folder.contents);
+        } else if (folder.contents != null) {
+            contents = new ArrayList<Entry>(folder.contents);
+        } else {
+            contents = new ArrayList<Entry>();
+        }
+        int removedAt = -1;
+        if (removedIdentifier != null) {
+            for (int i = contents.size() - 1; i >= 0; i--) {
+                if (removedIdentifier.equals(identifierAt(contents, i))) {
+                    contents.remove(i);
+                    removedAt = i;
+                }
+            }
+        }
+        if (added != null && added.identifier != null && !added.identifier.equals(removedIdentifier)) {
+            // Already listed, e.g. a change made offline and replayed on the server
+            for (int i = contents.size() - 1; i >= 0; i--) {
+                if (added.identifier.equals(identifierAt(contents, i))) {
+                    contents.remove(i);
+                    removedAt = i;
+                    removedIdentifier = added.identifier;
+                }
+            }
+        }
+        if (added != null && removedAt >= 0 && removedIdentifier.equals(added.identifier)) {
+            // Updated in place, e.g. renamed
+            contents.add(removedAt, added);
+        } else if (added != null) {
+            int position = contents.size();
+            if (added.type == Entry.Type.DIRECTORY) {
+                position = 0;
+                while (position < contents.size() && typeAt(contents, position) == Entry.Type.DIRECTORY) {
+                    position++;
+                }
+            }
+            contents.add(position, added);
+        }
+        copy.contents = contents;
+        return copy;
+    }
+
+    private static String identifierAt(List<Entry> contents, int index) {
+        return (contents instanceof LazyEntryList)
+                ? ((LazyEntryList) contents).getIdentifier(index) : contents.get(index).identifier;
+    }
+
+    private static Entry.Type typeAt(List<Entry> contents, int index) {
+        return (contents instanceof LazyEntryList)
+                ? ((LazyEntryList) contents).getType(index) : contents.get(index).type;
+    }
+
+    /**
+     * Delete the files of the listings of a folder.
+     *
+     * @param folderKey the folder part of the keys, up to the '?'
+     */
+    private void deleteFiles(final String folderKey) {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (File file : files) {
+                    if (file.getName().startsWith(folderPrefix(folderKey))) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Evict the least recently used listings from memory. They are still read from disk.
+     */
+    @Override
+    public long trimMemory(float keep) {
+        int target = (int) (maxMemoryEntries * keep);
+        long freed = 0;
+        synchronized (memory) {
+            Iterator<Listing> iterator = memory.values().iterator();
+            while (memory.size() > target && iterator.hasNext()) {
+                freed += iterator.next().estimatedSize();
+                iterator.remove();
+            }
+        }
+        return freed;
+    }
+
+    private void trimMemory() {
+        Iterator<String> iterator = memory.keySet().iterator();
+        while (memory.size() > maxMemoryEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskSize) {
+            return;
+        }
+        // Least recently written first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (total <= maxDiskSize) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    /**
+     * Name of the file of a listing: a hash of the folder part of the key, then a hash of the
+     * whole key, so that the listings of a folder can be found without reading them.
+     */
+    private static String fileName(String key) {
+        return folderPrefix(key.substring(0, key.indexOf('?') + 1)) + hash(key);
+    }
+
+    private static String folderPrefix(String folderKey) {
+        return hash(folderKey) + "-";
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(value.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fingerprint of the contents of a folder, to tell whether a revalidated listing changed.
+     */
+    static long fingerprint(Entry folder) {
+        long hash = 17;
+        List<Entry> contents = folder.contents;
+        if (contents == null) {
+            return hash;
+        }
+        LazyEntryList lazy = (contents instanceof LazyEntryList) ? (LazyEntryList) contents : null;
+        for (int i = 0; i < contents.size(); i++) {
+            int row = (lazy != null) ? lazy.getRow(i) : -1;
+            if (row >= 0 && !lazy.isMaterialized(i)) {
+                // Read the table rather than creating every child
+                EntryTable table = lazy.getTable();
+                hash = mix(hash, table.getIdentifier(row), table.getName(row),
+                        table.getBytes(row) == EntryTable.NO_SIZE ? 0 : table.getBytes(row),
+                        table.getCreationTime(row) == EntryTable.NO_DATE ? 0 : table.getCreationTime(row));
+            } else {
+                Entry child = contents.get(i);
+                hash = mix(hash, child.identifier, child.name, child.bytes,
+                        (child.creationDate != null) ? child.creationDate.getTime() : 0);
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, String identifier, String name, long bytes, long time) {
+        hash = hash * 31 + ((identifier != null) ? identifier.hashCode() : 0);
+        hash = hash * 31 + ((name != null) ? name.hashCode() : 0);
+        hash = hash * 31 + bytes;
+        return hash * 31 + time;
+    }
+
+    /**
+     * A cached listing.
+     */
+    static final class Listing {
+        final Entry entry;
+        final long time;
+        private long fingerprint;
+        private boolean hasFingerprint;
+
+        Listing(Entry entry, long time) {
+            this.entry = entry;
+            this.time = time;
+        }
+
+        /**
+         * @return the approximate heap used by the children of the listing
+         */
+        long estimatedSize() {
+            List<Entry> contents = entry.contents;
+            if (contents instanceof LazyEntryList) {
+                return ((LazyEntryList) contents).getTable().estimatedSize();
+            }
+            return (contents != null) ? (long) contents.size() * MemoryGovernor.ENTRY_SIZE : 0;
+        }
+
+        synchronized long fingerprint() {
+            if (!hasFingerprint) {
+                fingerprint = ListingCache.fingerprint(entry);
+                hasFingerprint = true;
+            }
+            return fingerprint;
+        }
+    }
+}
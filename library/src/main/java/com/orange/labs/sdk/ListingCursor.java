@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.exception.OrangeAPIException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Page by page listing of a folder, based on the {@code limit} and {@code offset} parameters of
+ * the Cloud Api.
+ *
+ * Pages are fetched on demand: {@link #get(int)} returns the entry at a position if its page is
+ * in memory, or requests the page and returns null. Each time a page is accessed, the next one
+ * is fetched in the background, so sequential consumption rarely waits. Only the most recently
+ * used pages are kept in memory.
+ *
+ * A cursor must be used from the main thread, where its listener is also called.
+ */
+public final class ListingCursor {
+
+    /**
+     * Default number of entries of a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Default number of pages kept in memory.
+     */
+    public static final int DEFAULT_MAX_PAGES = 5;
+
+    /**
+     * Callback interface for page loads.
+     */
+    public interface Listener {
+        /**
+         * Called when a page has been loaded. {@link #getCount()} may have changed.
+         *
+         * @param cursor the cursor
+         * @param page   index of the page
+         */
+        public void onPageLoaded(ListingCursor cursor, int page);
+
+        /**
+         * Called when a page could not be loaded. It is requested again on next access.
+         *
+         * @param cursor the cursor
+         * @param page   index of the page
+         * @param error  the Orange Api Cloud error
+         */
+        public void onPageError(ListingCursor cursor, int page, OrangeAPIException error);
+    }
+
+    private final OrangeCloudAPI<?> api;
+    private final Entry folder;
+    private final JSONObject parameters;
+    private final int pageSize;
+    private final int maxPages;
+
+    /** Pages in memory, least recently used first. */
+    private final LinkedHashMap<Integer, List<Entry>> pages;
+    /** Pages being fetched. */
+    private final Set<Integer> pending = new HashSet<Integer>();
+
+    private Listener listener;
+    /** Number of entries known to exist. */
+    private int count;
+    /** Index of the last page, -1 until a page shorter than pageSize has been received. */
+    private int lastPage = -1;
+    private boolean closed;
+
+    ListingCursor(OrangeCloudAPI<?> api, Entry folder, JSONObject parameters,
+                  int pageSize, final int maxPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive.");
+        }
+        if (maxPages < 2) {
+            throw new IllegalArgumentException("maxPages must be at least 2.");
+        }
+        this.api = api;
+        this.folder = folder;
+        this.parameters = parameters;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        pages = new LinkedHashMap<Integer, List<Entry>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<OrangeCloudAPI.Entry>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * @param listener listener notified of page loads, may be null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the folder listed by this cursor
+     */
+    public Entry getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return the number of entries of a page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Number of entries known so far. It grows as pages are loaded, and is exact once
+     * {@link #isComplete()} returns true.
+     *
+     * @return the number of entries
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true once the last page of the folder has been received
+     */
+    public boolean isComplete() {
+        return lastPage >= 0;
+    }
+
+    /**
+     * Return the entry at a position. If its page is not in memory, the page is requested and
+     * the listener is notified when it is loaded.
+     *
+     * @param position position of the entry in the folder
+     * @return the entry, or null if its page is not loaded yet
+     */
+    public Entry get(int position) {
+        if (position < 0) {
+            throw new IndexOutOfBoundsException("Position: " + position);
+        }
+        int page = position / pageSize;
+        List<Entry> entries = getPage(page);
+        int index = position - page * pageSize;
+        return (entries != null && index < entries.size()) ? entries.get(index) : null;
+    }
+
+    /**
+     * Return a page if it is in memory, and fetch it otherwise. The next page is prefetched
+     * in both cases.
+     *
+     * @param page index of the page
+     * @return the entries of the page, or null if the page is not loaded yet
+     */
+    public List<Entry> getPage(int page) {
+        List<Entry> entries = pages.get(page);
+        if (entries == null) {
+            load(page);
+        }
+        load(page + 1);
+        return entries;
+    }
+
+    /**
+     * Stop delivering pages and release the pages in memory.
+     */
+    public void close() {
+        closed = true;
+        pages.clear();
+        pending.clear();
+    }
+
+    private void load(final int page) {
+        if (closed || pages.containsKey(page) || pending.contains(page)
+                || (lastPage >= 0 && page > lastPage)) {
+            return;
+        }
+        pending.add(page);
+
+        JSONObject pageParameters = new JSONObject();
+        try {
+            if (parameters != null) {
+                Iterator<String> keys = parameters.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    pageParameters.put(key, parameters.get(key));
+                }
+            }
+            pageParameters.put("limit", pageSize);
+            pageParameters.put("offset", page * pageSize);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        api.listPage(folder, pageParameters, new OrangeListener.Success<Entry>() {
+            @Override
+            public void onResponse(Entry response) {
+                if (closed) {
+                    return;
+                }
+                pending.remove(page);
+                List<Entry> entries = response.contents;
+                if (entries == null) {
+                    entries = Collections.emptyList();
+                }
+                int size = entries.size();
+                if (size < pageSize) {
+                    lastPage = page;
+                    count = page * pageSize + size;
+                } else {
+                    count = Math.max(count, (page + 1) * pageSize);
+                }
+                pages.put(page, entries);
+                if (listener != null) {
+                    listener.onPageLoaded(ListingCursor.this, page);
+                }
+            }
+        }, new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                if (closed) {
+                    return;
+                }
+                pending.remove(page);
+                if (listener != null) {
+                    listener.onPageError(ListingCursor.this, page, error);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shrink the in-memory caches when the system runs low on memory, instead of letting it kill
+ * the process.
+ *
+ * The governor is registered on the application context. On each trim level, every cache
+ * added with {@link #add(Trimmable)} is asked to keep a fraction of its maximum size (see
+ * {@link #keepRatio(int)}):
+ *
+ * - while the application runs: three quarters when memory gets moderately low, half when it
+ *   is low, a quarter when it is critical;
+ * - once its UI is hidden: half;
+ * - in background: a quarter, a tenth in the middle of the cached processes, and nothing when
+ *   the process is among the first to be killed.
+ *
+ * The caches grow back to their maximum size afterwards. Caches are trimmed in the order they
+ * were added.
+ */
+public final class MemoryGovernor implements ComponentCallbacks2 {
+
+    private static final String TAG = MemoryGovernor.class.getSimpleName();
+
+    /**
+     * Approximate heap used by an Entry, for the caches that count entries instead of bytes.
+     */
+    static final int ENTRY_SIZE = 1024;
+
+    /**
+     * A cache the governor can shrink.
+     */
+    public interface Trimmable {
+        /**
+         * Evict the least recently used values until the cache holds at most a fraction of
+         * its maximum size.
+         *
+         * @param keep fraction of the maximum size to keep, between 0 and 1
+         * @return the number of bytes freed, estimated for caches that do not measure them
+         */
+        long trimMemory(float keep);
+    }
+
+    private final CopyOnWriteArrayList<Trimmable> trimmables = new CopyOnWriteArrayList<Trimmable>();
+    private volatile long freedBytes;
+
+    /**
+     * @param context any context, the governor is registered on the application context
+     */
+    public MemoryGovernor(Context context) {
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * @param trimmable a cache to shrink on memory pressure
+     */
+    public void add(Trimmable trimmable) {
+        trimmables.addIfAbsent(trimmable);
+    }
+
+    /**
+     * @param trimmable a cache previously added
+     */
+    public void remove(Trimmable trimmable) {
+        trimmables.remove(trimmable);
+    }
+
+    /**
+     * Shrink every cache as for a trim level of the system.
+     *
+     * @param level one of the ComponentCallbacks2 TRIM_MEMORY levels
+     * @return the number of bytes freed
+     */
+    public long trim(int level) {
+        float keep = keepRatio(level);
+        if (keep >= 1) {
+            return 0;
+        }
+        long freed = 0;
+        for (Trimmable trimmable : trimmables) {
+            freed += trimmable.trimMemory(keep);
+        }
+        freedBytes += freed;
+        Log.v(TAG, "trim(" + level + "): " + freed + " bytes freed");
+        return freed;
+    }
+
+    /**
+     * @return the number of bytes freed since the governor was created
+     */
+    public long getFreedBytes() {
+        return freedBytes;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * @return the fraction of the maximum size of the caches to keep at a trim level
+     */
+    static float keepRatio(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return 0;
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            return 0.1f;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.75f;
+        }
+        return 1;
+    }
+}
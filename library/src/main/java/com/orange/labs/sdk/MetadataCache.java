@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the extra information of files returned by
+ * {@link OrangeCloudAPI#fileInfo(Entry, OrangeListener.Success, OrangeListener.Error)}, keyed
+ * by identifier.
+ *
+ * Information is returned without a request while it is younger than the time to live. The
+ * API drops it when a request modifies the file or the folder containing it.
+ */
+public final class MetadataCache implements MemoryGovernor.Trimmable {
+
+    /**
+     * Default time during which the information of a file is returned without a request.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+
+    /**
+     * Default number of files kept.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final LinkedHashMap<String, Info> infos =
+            new LinkedHashMap<String, Info>(16, 0.75f, true);
+
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * @param timeToLive time during which the information of a file is returned without a
+     *                   request, in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("timeToLive must not be negative.");
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @param maxEntries number of files kept, the least recently used are dropped first
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        trim();
+    }
+
+    /**
+     * Drop the information of a file.
+     *
+     * @param identifier identifier of the file
+     */
+    public synchronized void invalidate(String identifier) {
+        infos.remove(identifier);
+    }
+
+    /**
+     * Drop the information of every file of a folder.
+     *
+     * @param folderIdentifier identifier of the folder
+     */
+    public synchronized void invalidateFolder(String folderIdentifier) {
+        Iterator<Info> iterator = infos.values().iterator();
+        while (iterator.hasNext()) {
+            if (folderIdentifier.equals(iterator.next().entry.parentIdentifier)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop everything.
+     */
+    public synchronized void clear() {
+        infos.clear();
+    }
+
+    /**
+     * @param identifier identifier of the file
+     * @return the Entry holding the information of the file, null if it is not cached or too old
+     */
+    synchronized Entry get(String identifier) {
+        Info info = infos.get(identifier);
+        if (info == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - info.time >= timeToLive) {
+            infos.remove(identifier);
+            return null;
+        }
+        return info.entry;
+    }
+
+    /**
+     * @param identifier identifier of the file
+     * @return the Entry holding the information of the file, even if it is too old, null if
+     * it is not cached
+     */
+    synchronized Entry getAny(String identifier) {
+        Info info = infos.get(identifier);
+        return (info != null) ? info.entry : null;
+    }
+
+    /**
+     * @param info Entry parsed from a file info response. It must not be modified afterwards.
+     */
+    synchronized void put(Entry info) {
+        if (info.identifier == null) {
+            return;
+        }
+        infos.put(info.identifier, new Info(info, System.currentTimeMillis()));
+        trim();
+    }
+
+    @Override
+    public synchronized long trimMemory(float keep) {
+        int before = infos.size();
+        int target = (int) (maxEntries * keep);
+        Iterator<Map.Entry<String, Info>> iterator = infos.entrySet().iterator();
+        while (infos.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        return (long) (before - infos.size()) * MemoryGovernor.ENTRY_SIZE;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Info>> iterator = infos.entrySet().iterator();
+        while (infos.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Info {
+        final Entry entry;
+        final long time;
+
+        Info(Entry entry, long time) {
+            this.entry = entry;
+            this.time = time;
+        }
+    }
+}
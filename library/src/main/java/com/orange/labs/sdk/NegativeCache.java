@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded memory of requests that failed in a way retrying will not fix, e.g. the thumbnail
+ * of a file type the server cannot render. A failure is remembered with its status code for
+ * a short time, after which the request is tried again.
+ */
+final class NegativeCache implements MemoryGovernor.Trimmable {
+
+    /**
+     * Default number of failures remembered.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 512;
+
+    /**
+     * Default time during which a failure is remembered.
+     */
+    static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+
+    /** Approximate heap used by a remembered failure and its key. */
+    private static final int FAILURE_SIZE = 128;
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final LinkedHashMap<String, Failure> failures;
+
+    NegativeCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxEntries number of failures remembered, the least recently used are forgotten
+     * @param timeToLive time during which a failure is remembered, in milliseconds
+     */
+    NegativeCache(final int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        failures = new LinkedHashMap<String, Failure>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+                return size() > NegativeCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key key of the request
+     * @return the status code of the remembered failure, 0 if there is none
+     */
+    synchronized int get(String key) {
+        Failure failure = failures.get(key);
+        if (failure == null) {
+            return 0;
+        }
+        if (System.currentTimeMillis() - failure.time >= timeToLive) {
+            failures.remove(key);
+            return 0;
+        }
+        return failure.statusCode;
+    }
+
+    /**
+     * Remember a failure.
+     *
+     * @param key        key of the request
+     * @param statusCode the status code of the failure
+     */
+    synchronized void put(String key, int statusCode) {
+        failures.put(key, new Failure(statusCode, System.currentTimeMillis()));
+    }
+
+    /**
+     * Forget the failure of a request, e.g. because the resource changed.
+     *
+     * @param key key of the request
+     */
+    synchronized void remove(String key) {
+        failures.remove(key);
+    }
+
+    synchronized void clear() {
+        failures.clear();
+    }
+
+    @Override
+    public synchronized long trimMemory(float keep) {
+        int before = failures.size();
+        int target = (int) (maxEntries * keep);
+        Iterator<String> iterator = failures.keySet().iterator();
+        while (failures.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        return (long) (before - failures.size()) * FAILURE_SIZE;
+    }
+
+    private static final class Failure {
+        final int statusCode;
+        final long time;
+
+        Failure(int statusCode, long time) {
+            this.statusCode = statusCode;
+            this.time = time;
+        }
+    }
+}
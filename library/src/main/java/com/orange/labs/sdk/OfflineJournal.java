@@ -0,0 +1,544 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.exception.CloudAPIException;
+import com.orange.labs.sdk.exception.OrangeAPIException;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Durable queue of the modifications made while the device is offline.
+ *
+ * When a journal is set with {@link OrangeCloudAPI#setOfflineJournal(OfflineJournal)}, the
+ * modifications requested without network are written to the journal file and applied to the
+ * cached listings at once. They are sent to the server in order when the network comes back,
+ * including after a restart. A modification the server refuses, e.g. because the entry was
+ * deleted by another client in the meantime, is reported to the {@link Listener} and skipped.
+ *
+ * While the journal is not empty, modifications made online are written to the journal too,
+ * so that they are sent after the ones made offline. The content of the files uploaded this
+ * way is copied next to the journal file until they are sent.
+ *
+ * Folders created offline get a local identifier until they are created on the server. It can
+ * be used like any other identifier, e.g. to upload files into the new folder.
+ */
+public final class OfflineJournal {
+
+    /**
+     * Callback interface for the replay of the journal, called on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * A modification has been applied by the server.
+         *
+         * @param operation the modification
+         * @param result    the Entry returned by the server, null for deletes and uploads
+         */
+        public void onReplayed(Operation operation, Entry result);
+
+        /**
+         * The server refused a modification. It is removed from the journal.
+         *
+         * @param operation the modification
+         * @param error     the error returned by the server
+         */
+        public void onConflict(Operation operation, OrangeAPIException error);
+    }
+
+    /**
+     * A modification made offline.
+     */
+    public static final class Operation {
+
+        /**
+         * Kinds of modification.
+         */
+        public enum Type {
+            CREATE_FOLDER, RENAME, MOVE, DELETE, UPLOAD
+        }
+
+        private final Type type;
+        private final String identifier;
+        private final boolean folder;
+        private final String parentIdentifier;
+        private final String name;
+        private final String destinationIdentifier;
+        private final String uri;
+
+        Operation(Type type, String identifier, boolean folder, String parentIdentifier,
+                  String name, String destinationIdentifier, String uri) {
+            this.type = type;
+            this.identifier = identifier;
+            this.folder = folder;
+            this.parentIdentifier = parentIdentifier;
+            this.name = name;
+            this.destinationIdentifier = destinationIdentifier;
+            this.uri = uri;
+        }
+
+        /**
+         * @return the kind of modification
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return identifier of the modified entry, the local identifier of a folder created
+         * offline, null for uploads
+         */
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return true if the modified entry is a folder
+         */
+        public boolean isFolder() {
+            return folder;
+        }
+
+        /**
+         * @return identifier of the folder containing the entry, null for the root
+         */
+        public String getParentIdentifier() {
+            return parentIdentifier;
+        }
+
+        /**
+         * @return new name of the entry, or name of the created folder or uploaded file
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return identifier of the folder an entry is moved to
+         */
+        public String getDestinationIdentifier() {
+            return destinationIdentifier;
+        }
+
+        /**
+         * @return Uri of the uploaded file
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("type", type.name());
+            json.put("id", identifier);
+            json.put("folder", folder);
+            json.put("parentId", parentIdentifier);
+            json.put("name", name);
+            json.put("destinationId", destinationIdentifier);
+            json.put("uri", uri);
+            return json;
+        }
+
+        static Operation fromJson(JSONObject json) {
+            return new Operation(Type.valueOf(json.optString("type")), optString(json, "id"),
+                    json.optBoolean("folder"), optString(json, "parentId"),
+                    optString(json, "name"), optString(json, "destinationId"),
+                    optString(json, "uri"));
+        }
+
+        private static String optString(JSONObject json, String key) {
+            return json.isNull(key) ? null : json.optString(key);
+        }
+    }
+
+    private static final String LOCAL_PREFIX = "local-";
+
+    private final File file;
+    private final ArrayList<Operation> operations = new ArrayList<Operation>();
+    /** Operations appended but not written to the file yet, they are not replayed before. */
+    private final Set<Operation> unwritten = new HashSet<Operation>();
+    /** Server identifiers of the folders created offline, by local identifier. */
+    private final HashMap<String, String> identifiers = new HashMap<String, String>();
+    /** Writes the file in order, outside of the main thread. */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile Listener listener;
+
+    /**
+     * Open a journal, reading the modifications not sent yet.
+     *
+     * @param file file of the journal, created when needed
+     */
+    public OfflineJournal(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * @param listener listener of the replay, null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the modifications not sent yet, oldest first
+     */
+    public synchronized List<Operation> getOperations() {
+        return Collections.unmodifiableList(new ArrayList<Operation>(operations));
+    }
+
+    /**
+     * @return true if every modification has been sent
+     */
+    public synchronized boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Drop the modifications not sent yet.
+     */
+    public synchronized void clear() {
+        for (Operation operation : operations) {
+            deleteCopy(operation);
+        }
+        operations.clear();
+        identifiers.clear();
+        save();
+    }
+
+    /**
+     * @param identifier an identifier
+     * @return true if it is the local identifier of a folder created offline
+     */
+    public static boolean isLocal(String identifier) {
+        return identifier != null && identifier.startsWith(LOCAL_PREFIX);
+    }
+
+    static String newLocalIdentifier() {
+        return LOCAL_PREFIX + UUID.randomUUID().toString();
+    }
+
+    Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Append a modification. It is written to the file in the background, and only replayed
+     * once written.
+     *
+     * @param operation the modification
+     * @param success   called on the main thread once the modification is written
+     * @param failure   called on the main thread if the journal cannot be written, the
+     *                  modification is then dropped
+     */
+    void append(Operation operation,
+                OrangeListener.Success<Operation> success,
+                OrangeListener.Error failure) {
+        append(operation, null, null, success, failure);
+    }
+
+    /**
+     * Append an upload. Its content is copied next to the journal file in the background, as
+     * the Uri given by the application may not be readable anymore when the upload is sent,
+     * e.g. after a restart.
+     *
+     * @param parentIdentifier identifier of the folder to upload to
+     * @param name             name of the uploaded file
+     * @param content          content of the file, closed once copied
+     * @param success          called on the main thread once the upload is written
+     * @param failure          called on the main thread if the content or the journal cannot
+     *                         be written, the upload is then dropped
+     */
+    void appendUpload(String parentIdentifier,
+                      String name,
+                      InputStream content,
+                      OrangeListener.Success<Operation> success,
+                      OrangeListener.Error failure) {
+        File copy = new File(uploadDirectory(), UUID.randomUUID().toString());
+        append(new Operation(Operation.Type.UPLOAD, null, false, parentIdentifier, name, null,
+                Uri.fromFile(copy).toString()), content, copy, success, failure);
+    }
+
+    private void append(final Operation operation,
+                        final InputStream content,
+                        final File copy,
+                        final OrangeListener.Success<Operation> success,
+                        final OrangeListener.Error failure) {
+        final String journal;
+        synchronized (this) {
+            operations.add(operation);
+            try {
+                journal = serialize();
+            } catch (JSONException e) {
+                e.printStackTrace();
+                operations.remove(operation);
+                failure.onErrorResponse(writeError(e));
+                return;
+            }
+            unwritten.add(operation);
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                try {
+                    if (content != null) {
+                        copy(content, copy);
+                    }
+                    write(journal);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    error = e;
+                }
+                final IOException failed = error;
+                synchronized (OfflineJournal.this) {
+                    unwritten.remove(operation);
+                    if (failed != null) {
+                        operations.remove(operation);
+                        if (copy != null) {
+                            copy.delete();
+                        }
+                        save();
+                    }
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed != null) {
+                            failure.onErrorResponse(writeError(failed));
+                        } else {
+                            success.onResponse(operation);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the oldest modification not sent yet, null if none or if it is not written to
+     * the file yet
+     */
+    synchronized Operation peek() {
+        if (operations.isEmpty() || unwritten.contains(operations.get(0))) {
+            return null;
+        }
+        return operations.get(0);
+    }
+
+    synchronized void removeFirst() {
+        if (!operations.isEmpty()) {
+            deleteCopy(operations.remove(0));
+            save();
+        }
+    }
+
+    /**
+     * Remember the server identifier of a folder created offline. It is kept until the journal
+     * is cleared, as the application may still use the local identifier afterwards.
+     */
+    synchronized void mapIdentifier(String local, String server) {
+        identifiers.put(local, server);
+        save();
+    }
+
+    /**
+     * @return the server identifier of a folder created offline, the identifier itself if it is
+     * not local, or null if the folder has not been created on the server
+     */
+    synchronized String resolve(String identifier) {
+        if (!isLocal(identifier)) {
+            return identifier;
+        }
+        return identifiers.get(identifier);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(FileUtils.readFileToByteArray(file), "UTF-8"));
+            JSONArray array = json.optJSONArray("operations");
+            if (array != null) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject operation = array.optJSONObject(i);
+                    if (operation != null) {
+                        operations.add(Operation.fromJson(operation));
+                    }
+                }
+            }
+            JSONObject mapped = json.optJSONObject("identifiers");
+            if (mapped != null) {
+                Iterator<String> keys = mapped.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    identifiers.put(key, mapped.optString(key));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            // Unknown operation type
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the journal in the background. Failures are only logged, the modifications are
+     * still in memory and written again with the next change.
+     */
+    private void save() {
+        final String content;
+        try {
+            content = serialize();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(content);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Directory of the copies of the files uploaded through the journal.
+     */
+    private File uploadDirectory() {
+        return new File(file.getPath() + ".uploads");
+    }
+
+    /**
+     * Delete, in the background, the copy of the content of an upload sent or dropped.
+     */
+    private void deleteCopy(Operation operation) {
+        if (operation.getType() != Operation.Type.UPLOAD) {
+            return;
+        }
+        final File copy = new File(Uri.parse(operation.getUri()).getPath());
+        if (!uploadDirectory().equals(copy.getParentFile())) {
+            // Uploaded from the Uri of the application
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                copy.delete();
+            }
+        });
+    }
+
+    private void copy(InputStream content, File copy) throws IOException {
+        File directory = copy.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            content.close();
+            throw new IOException("Cannot create " + directory);
+        }
+        FileOutputStream output = new FileOutputStream(copy);
+        try {
+            byte buf[] = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = content.read(buf)) != -1) {
+                output.write(buf, 0, bytesRead);
+            }
+            output.flush();
+            output.getFD().sync();
+        } finally {
+            output.close();
+            content.close();
+        }
+    }
+
+    private String serialize() throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Operation operation : operations) {
+            array.put(operation.toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put("operations", array);
+        json.put("identifiers", new JSONObject(identifiers));
+        return json.toString();
+    }
+
+    /**
+     * Write the journal to a temporary file, synced to the storage and renamed over the
+     * previous one, so that it is never left half written.
+     */
+    private void write(String content) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            output.write(content.getBytes("UTF-8"));
+            output.flush();
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private static OrangeAPIException writeError(Exception e) {
+        return new CloudAPIException(0, "journal", "Cannot write the offline journal",
+                e.getMessage());
+    }
+}
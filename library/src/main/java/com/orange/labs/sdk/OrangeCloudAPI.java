@@ -26,11 +26,13 @@ package com.orange.labs.sdk;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.text.TextUtils;
-import android.util.Log;
 
+import com.android.volley.ParseError;
+import com.android.volley.Request;
 import com.android.volley.Request.Method;
 import com.android.volley.Response;
 import com.android.volley.toolbox.ImageLoader.ImageCache;
+import com.orange.labs.sdk.exception.CloudAPIException;
 import com.orange.labs.sdk.exception.OrangeCloudOperationException;
 import com.orange.labs.sdk.exception.OrangeAPIException;
 import com.orange.labs.sdk.exception.SynchronusException;
@@ -40,14 +42,19 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -64,7 +71,7 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     /**
      * The version of this Orange SDK.
      */
-    public static final String SDK_VERSION = "1.0.7";
+    public static final String SDK_VERSION = "2.0.0";
     // Server information
     private static String API_URL = "https://api.orange.com/cloud/";
     private static String API_CONTENT_URL = "https://cloudapi.orange.com/cloud/";
@@ -74,6 +81,52 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     private static String CLOUDAPI_DEFAULT_SCOPE = "cloud";
     // Internal
     private SESS_T session;
+    private final UploadDeduplicator uploadDeduplicator = new UploadDeduplicator(this);
+    private final EntryIdentityMap identities = new EntryIdentityMap();
+    private volatile ListingCache listingCache;
+    private volatile EntryImageCache entryImageCache;
+    private volatile MetadataCache metadataCache = new MetadataCache();
+    /** Thumbnails and previews the server has none of, by image cache key. */
+    private final NegativeCache missingImages = new NegativeCache();
+    private final FreespaceTracker freespaceTracker = new FreespaceTracker();
+    private volatile OfflineJournal offlineJournal;
+    private volatile ImageCache imageCache;
+
+    /**
+     * Trim the caches currently set, decoded images first so that the bitmaps they evict
+     * are counted by the pool.
+     */
+    private final MemoryGovernor.Trimmable cacheTrimmer = new MemoryGovernor.Trimmable() {
+        @Override
+        public long trimMemory(float keep) {
+            long freed = 0;
+            ImageCache images = imageCache;
+            if (images instanceof MemoryGovernor.Trimmable) {
+                freed += ((MemoryGovernor.Trimmable) images).trimMemory(keep);
+            }
+            EntryImageCache entryImages = entryImageCache;
+            if (entryImages != null) {
+                freed += entryImages.trimMemory(keep);
+            }
+            BitmapPool pool = session.getRestClient().getBitmapPool();
+            if (pool != null) {
+                freed += pool.trimMemory(keep);
+            }
+            ListingCache listings = listingCache;
+            if (listings != null) {
+                freed += listings.trimMemory(keep);
+            }
+            MetadataCache infos = metadataCache;
+            if (infos != null) {
+                freed += infos.trimMemory(keep);
+            }
+            return freed + missingImages.trimMemory(keep);
+        }
+    };
+    private ConnectivityMonitor connectivity;
+    private JournalReplay journalReplay;
+    private final TokenRefresher tokenRefresher;
+    private volatile AuthHeaders authHeaders;
 
 
     /**
@@ -87,9 +140,13 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             throw new IllegalArgumentException("Session must not be null.");
         }
         this.session = session;
+        tokenRefresher = new TokenRefresher(session);
 
         // Need to add CloudAPI default scope
         session.addScope(CLOUDAPI_DEFAULT_SCOPE);
+
+        // Shrink the caches when the system is low on memory
+        session.getRestClient().getMemoryGovernor().add(cacheTrimmer);
     }
 
     /**
@@ -119,6 +176,264 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
      */
     public void setImageCache(ImageCache imageCache) {
         session.getRestClient().setCache(imageCache);
+        this.imageCache = imageCache;
+    }
+
+    /**
+     * @return the governor shrinking the caches of this API on memory pressure. Caches of the
+     * application can be added to it.
+     */
+    public MemoryGovernor getMemoryGovernor() {
+        return session.getRestClient().getMemoryGovernor();
+    }
+
+    /**
+     * Set a two-tier cache of thumbnails and previews, keyed by entry identifier. When set, it
+     * is used by {@link #thumbnail} and {@link #preview} instead of the image cache.
+     *
+     * The images it held in memory when the application was last left are decoded again in
+     * the background, so set it right after creating the API to have them ready while the
+     * session authenticates.
+     *
+     * @param cache the cache, null to disable it
+     */
+    public void setEntryImageCache(EntryImageCache cache) {
+        if (cache != null) {
+            cache.setBitmapPool(session.getRestClient().getBitmapPool());
+            session.getRestClient().warmImages(cache, EntryImageCache.MAX_WARM_IMAGES);
+        }
+        entryImageCache = cache;
+    }
+
+    /**
+     * @return the cache of thumbnails and previews, null if none
+     */
+    public EntryImageCache getEntryImageCache() {
+        return entryImageCache;
+    }
+
+    /**
+     * Set a pool of bitmaps to decode thumbnails, previews and image contents into. Bitmaps
+     * come back to the pool once they are evicted from the cache of thumbnails and previews
+     * and released with {@link #releaseBitmap(Bitmap)}.
+     *
+     * @param pool the pool, null to allocate a new bitmap for each image
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        session.getRestClient().setBitmapPool(pool);
+        EntryImageCache cache = entryImageCache;
+        if (cache != null) {
+            cache.setBitmapPool(pool);
+        }
+    }
+
+    /**
+     * @return the pool the images are decoded into, null if none
+     */
+    public BitmapPool getBitmapPool() {
+        return session.getRestClient().getBitmapPool();
+    }
+
+    /**
+     * Tell the SDK that a bitmap it delivered is no longer displayed, so that its memory can
+     * be reused for another image. The bitmap must not be drawn anymore after this call.
+     * Nothing is done if no pool is set.
+     *
+     * @param bitmap the bitmap, may be null
+     */
+    public void releaseBitmap(Bitmap bitmap) {
+        BitmapPool pool = session.getRestClient().getBitmapPool();
+        if (pool != null) {
+            pool.release(bitmap);
+        }
+    }
+
+    /**
+     * Set the size over which folder listings are written to a temporary file and parsed from
+     * there. It is also the maximum heap used to hold the body of a listing.
+     *
+     * @param bytes size in bytes (default {@link RestUtils#DEFAULT_MAX_IN_MEMORY_RESPONSE})
+     */
+    public void setMaxInMemoryResponseSize(int bytes) {
+        session.getRestClient().setMaxInMemoryResponseSize(bytes);
+    }
+
+    /**
+     * Every Entry returned by this instance is the canonical instance of its identifier,
+     * updated in place by later responses. Listeners of this map are notified of the updates.
+     *
+     * @return the identity map of the entries
+     */
+    public EntryIdentityMap getIdentityMap() {
+        return identities;
+    }
+
+    /**
+     * Set the cache of folder listings used by
+     * {@link #listEntries(Entry, JSONObject, OrangeListener.Success, OrangeListener.Revalidation, OrangeListener.Error)}.
+     *
+     * The listings it held in memory when the application was last used are opened again in
+     * the background, so set it right after creating the API to have the last folders ready
+     * before the session is authenticated.
+     *
+     * @param cache the cache, null to disable it
+     */
+    public void setListingCache(ListingCache cache) {
+        if (cache != null) {
+            cache.warm();
+        }
+        listingCache = cache;
+    }
+
+    /**
+     * @return the cache of folder listings, null if none
+     */
+    public ListingCache getListingCache() {
+        return listingCache;
+    }
+
+    /**
+     * Set the cache of the information returned by
+     * {@link #fileInfo(Entry, OrangeListener.Success, OrangeListener.Error)}. A cache with the
+     * default settings is set when the API is created.
+     *
+     * @param cache the cache, null to disable it
+     */
+    public void setMetadataCache(MetadataCache cache) {
+        metadataCache = cache;
+    }
+
+    /**
+     * @return the cache of file information, null if none
+     */
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Enable the offline mode. Without network, listings, file information and images are
+     * served from the caches and flagged as stale (see {@link Entry#isStale()}), and
+     * createFolder, rename, move, delete and upload are written to the journal, applied to
+     * the cached listings, and sent to the server when the network comes back. While the
+     * journal is not empty, they are written to the journal when online too, so that they are
+     * sent in order.
+     *
+     * @param journal the journal of the modifications made offline, null to disable the
+     *                offline mode
+     */
+    public synchronized void setOfflineJournal(OfflineJournal journal) {
+        if (connectivity == null) {
+            connectivity = session.getRestClient().getConnectivityMonitor();
+        }
+        if (journalReplay != null) {
+            connectivity.removeListener(journalReplay);
+            journalReplay = null;
+        }
+        offlineJournal = journal;
+        if (journal != null) {
+            journalReplay = new JournalReplay(this, journal);
+            connectivity.addListener(journalReplay);
+            // Modifications left by a previous run
+            journalReplay.start();
+        }
+    }
+
+    /**
+     * @return the journal of the modifications made offline, null if the offline mode is
+     * disabled
+     */
+    public OfflineJournal getOfflineJournal() {
+        return offlineJournal;
+    }
+
+    /**
+     * @param identifiers identifiers of the entries a modification refers to, null values are
+     *                    ignored
+     * @return true if the modification must be written to the offline journal rather than
+     * sent: the device is offline, modifications are still waiting in the journal and must be
+     * sent first, or it refers to a folder created offline not created on the server yet
+     */
+    private boolean journalFirst(String... identifiers) {
+        OfflineJournal journal = offlineJournal;
+        if (journal == null) {
+            return false;
+        }
+        if (!isOnline() || !journal.isEmpty()) {
+            return true;
+        }
+        for (String identifier : identifiers) {
+            if (identifier != null && journal.resolve(identifier) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entry itself, or a copy of it with the server identifiers of the folders
+     * created offline it refers to
+     */
+    private Entry resolved(Entry entry) {
+        OfflineJournal journal = offlineJournal;
+        if (entry == null || journal == null || (!OfflineJournal.isLocal(entry.identifier)
+                && !OfflineJournal.isLocal(entry.parentIdentifier))) {
+            return entry;
+        }
+        Entry copy = new Entry();
+        copy.identifier = resolved(journal, entry.identifier);
+        copy.updateFrom(entry, false);
+        copy.parentIdentifier = resolved(journal, entry.parentIdentifier);
+        return copy;
+    }
+
+    private static String resolved(OfflineJournal journal, String identifier) {
+        String server = journal.resolve(identifier);
+        return (server != null) ? server : identifier;
+    }
+
+    /**
+     * Write a modification to the offline journal, then send it if the device is online.
+     *
+     * @param operation the modification
+     * @param success   called once the modification is written to the journal
+     * @param failure   called if the journal cannot be written
+     */
+    private void appendToJournal(OfflineJournal.Operation operation,
+                                 final OrangeListener.Success<OfflineJournal.Operation> success,
+                                 OrangeListener.Error failure) {
+        offlineJournal.append(operation, new OrangeListener.Success<OfflineJournal.Operation>() {
+            @Override
+            public void onResponse(OfflineJournal.Operation operation) {
+                success.onResponse(operation);
+                replayJournal();
+            }
+        }, failure);
+    }
+
+    /**
+     * Send the modifications of the offline journal if the device is online, e.g. when the
+     * network came back while a modification was being written.
+     */
+    private synchronized void replayJournal() {
+        if (journalReplay != null && isOnline()) {
+            journalReplay.start();
+        }
+    }
+
+    /**
+     * @return false if the offline mode is enabled and the device has no network connection
+     */
+    public boolean isOnline() {
+        ConnectivityMonitor monitor = connectivity;
+        return offlineJournal == null || monitor == null || monitor.isOnline();
+    }
+
+    /**
+     * @return the tracker of the free space of the account, adjusted locally after uploads,
+     * copies and deletes
+     */
+    public FreespaceTracker getFreespaceTracker() {
+        return freespaceTracker;
     }
 
     /**
@@ -129,7 +444,9 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     }
 
     /**
-     * Get the available space of the current account.
+     * Get the available space of the current account. The value is kept by the
+     * {@link FreespaceTracker} and adjusted locally after uploads, copies and deletes, so the
+     * server is only asked again once it is older than the time to live of the tracker.
      *
      * @param success callback returning the CloudItem (folders and its elements)
      * @param failure callback when error occurred
@@ -137,23 +454,33 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     public void freespace(final OrangeListener.Success<Long> success,
                           final OrangeListener.Error failure) {
 
+        long cached = freespaceTracker.getFreespace();
+        if (cached != FreespaceTracker.UNKNOWN) {
+            success.onResponse(cached);
+            return;
+        }
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/freespace/";
 
         // Prepare URL
         final String url = API_URL + API_VERSION + "/freespace";
 
-        session.getRestClient().jsonRequest(tag, Method.GET, url, null, getHeaders(),
+        final long requestTime = System.currentTimeMillis();
+        final long token = freespaceTracker.changes();
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().jsonRequest(tag, Method.GET, url, null, headers,
                 new Response.Listener<JSONObject>() {
                     @Override
                     public void onResponse(JSONObject response) {
                         long freeSpace = response.optLong("freespace");
+                        freespaceTracker.set(freeSpace, requestTime, token);
                         success.onResponse(new Long(freeSpace));
                     }
                 }, new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
                                 // retry request
@@ -192,17 +519,18 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         // Prepare URL
         final String url = API_URL + API_VERSION + "/folders/" + entryIdentifier;
 
-        session.getRestClient().jsonRequest(tag, Method.GET, url, null, getHeaders(),
-                new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().streamRequest(tag, url, headers, EntryParser.ALL,
+                new Response.Listener<Entry>() {
                     @Override
-                    public void onResponse(JSONObject response) {
-                        success.onResponse(new Entry(response));
+                    public void onResponse(Entry response) {
+                        success.onResponse(canonical(response, true));
                     }
                 }, new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
 
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
                                 // retry request
@@ -227,6 +555,214 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                            final JSONObject parameters,
                            final OrangeListener.Success<Entry> success,
                            final OrangeListener.Error failure) {
+        listEntries(entry, parameters, EntryParser.ALL, true, success, failure);
+    }
+
+    /**
+     * List the content of a entries function of parameters, using the listing cache.
+     *
+     * A cached listing is delivered to {@code success}, at once if it is in memory, else once
+     * read from disk in the background. If it is older than the time to live of the cache, the
+     * folder is listed again in the background and the up to date listing is delivered to
+     * {@code revalidation}, with a flag telling whether it changed. A failure of this
+     * revalidation is delivered to {@code revalidation}, not to {@code failure}. Without
+     * cached listing, the listing of the server is delivered to {@code success} and
+     * {@code revalidation} is not called.
+     *
+     * @param entry         folder object to list. Can be null to get the root access.
+     * @param parameters    Add parameters (see documentation)
+     * @param success       callback returning a Entry (folders and its contents)
+     * @param revalidation  callback returning the up to date listing, may be null
+     * @param failure       callback when error occurred
+     * @see #setListingCache(ListingCache)
+     */
+    public void listEntries(final Entry entry,
+                            final JSONObject parameters,
+                            final OrangeListener.Success<Entry> success,
+                            final OrangeListener.Revalidation<Entry> revalidation,
+                            final OrangeListener.Error failure) {
+        final ListingCache cache = listingCache;
+        if (cache == null || !isOnline()) {
+            listEntries(entry, parameters, success, failure);
+            return;
+        }
+
+        final String key = ListingCache.key((entry != null) ? entry.identifier : "", parameters);
+        cache.get(key, new OrangeListener.Success<ListingCache.Listing>() {
+            @Override
+            public void onResponse(ListingCache.Listing cached) {
+                listCached(entry, parameters, cache, key, cached, success, revalidation, failure);
+            }
+        });
+    }
+
+    /**
+     * Deliver a cached listing and revalidate it, or list the folder if it is not cached.
+     * Once a cached listing is delivered, a failure of its revalidation is only reported to
+     * {@code revalidation}.
+     */
+    private void listCached(final Entry entry,
+                            final JSONObject parameters,
+                            final ListingCache cache,
+                            final String key,
+                            final ListingCache.Listing cached,
+                            final OrangeListener.Success<Entry> success,
+                            final OrangeListener.Revalidation<Entry> revalidation,
+                            final OrangeListener.Error failure) {
+        final long fingerprint = (cached != null) ? cached.fingerprint() : 0;
+        if (cached != null) {
+            Entry folder = listed(ListingCache.detached(cached.entry),
+                    ListingCache.isFullListing(parameters));
+            success.onResponse(folder);
+            if (!cache.isStale(cached)) {
+                if (revalidation != null) {
+                    revalidation.onRevalidated(folder, false);
+                }
+                return;
+            }
+        }
+
+        listEntries(entry, parameters, EntryParser.ALL, true, new OrangeListener.Success<Entry>() {
+            @Override
+            public void onResponse(Entry response) {
+                cache.put(key, response);
+                if (cached == null) {
+                    success.onResponse(response);
+                } else if (revalidation != null) {
+                    revalidation.onRevalidated(response,
+                            ListingCache.fingerprint(response) != fingerprint);
+                }
+            }
+        }, new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                if (cached == null) {
+                    failure.onErrorResponse(error);
+                } else if (revalidation != null) {
+                    revalidation.onRevalidationFailed(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * List the content of a entries function of parameters, only parsing the given fields of
+     * the folder and of its contents. The identifier and the type are always parsed.
+     *
+     * @param entry         folder object to list. Can be null to get the root access.
+     * @param parameters    Add parameters (see documentation)
+     * @param fields        the fields to parse
+     * @param success       callback returning a Entry (folders and its contents)
+     * @param failure       callback when error occurred
+     */
+    public void listEntries(final Entry entry,
+                            final JSONObject parameters,
+                            final EnumSet<EntryParser.Field> fields,
+                            final OrangeListener.Success<Entry> success,
+                            final OrangeListener.Error failure) {
+        listEntries(entry, parameters, new EntryParser(fields), true, success, failure);
+    }
+
+    /**
+     * List a page of a folder. The contents of the canonical folder Entry are left untouched,
+     * as they would otherwise be replaced by a single page.
+     */
+    void listPage(final Entry entry,
+                  final JSONObject parameters,
+                  final OrangeListener.Success<Entry> success,
+                  final OrangeListener.Error failure) {
+        listEntries(entry, parameters, EntryParser.ALL, false, success, failure);
+    }
+
+    /**
+     * Open a page by page listing of a folder. Pages are requested with the limit and offset
+     * parameters, so the first rows of a huge folder are available without waiting for the
+     * whole listing.
+     *
+     * @param entry         folder object to list. Can be null to get the root access.
+     * @param parameters    Add parameters (see documentation), limit and offset are set by
+     *                      the cursor
+     * @param pageSize      number of entries of a page
+     * @param maxPages      number of pages kept in memory, at least 2
+     * @return the cursor, nothing is requested until it is accessed
+     */
+    public ListingCursor openListing(final Entry entry,
+                                     final JSONObject parameters,
+                                     final int pageSize,
+                                     final int maxPages) {
+        return new ListingCursor(this, entry, parameters, pageSize, maxPages);
+    }
+
+    /**
+     * Open a page by page listing of a folder, with {@link ListingCursor#DEFAULT_PAGE_SIZE}
+     * entries per page and {@link ListingCursor#DEFAULT_MAX_PAGES} pages in memory.
+     *
+     * @param entry         folder object to list. Can be null to get the root access.
+     * @param parameters    Add parameters (see documentation)
+     * @return the cursor, nothing is requested until it is accessed
+     */
+    public ListingCursor openListing(final Entry entry, final JSONObject parameters) {
+        return openListing(entry, parameters, ListingCursor.DEFAULT_PAGE_SIZE,
+                ListingCursor.DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * List the content of a folder as a compact {@link EntryTable}, suitable for folders with
+     * a very large number of children. Rows keep the order of the server response.
+     *
+     * @param entry         folder object to list. Can be null to get the root access.
+     * @param parameters    Add parameters (see documentation)
+     * @param fields        the fields to parse, CONTENTS is always added
+     * @param success       callback returning the children of the folder
+     * @param failure       callback when error occurred
+     */
+    public void listEntryTable(final Entry entry,
+                               final JSONObject parameters,
+                               final EnumSet<EntryParser.Field> fields,
+                               final OrangeListener.Success<EntryTable> success,
+                               final OrangeListener.Error failure) {
+        EnumSet<EntryParser.Field> parsed = EnumSet.copyOf(fields);
+        parsed.add(EntryParser.Field.CONTENTS);
+        listEntries(entry, parameters, new EntryParser(parsed), false, new OrangeListener.Success<Entry>() {
+            @Override
+            public void onResponse(Entry response) {
+                if (response.contents instanceof LazyEntryList) {
+                    success.onResponse(((LazyEntryList) response.contents).getTable());
+                } else {
+                    // Not a folder
+                    success.onResponse(new EntryTable(false));
+                }
+            }
+        }, failure);
+    }
+
+    private void listEntries(final Entry entry,
+                             final JSONObject parameters,
+                             final EntryParser parser,
+                             final boolean fullListing,
+                             final OrangeListener.Success<Entry> success,
+                             final OrangeListener.Error failure) {
+        listEntries(entry, parameters, parser, fullListing, null, Request.Priority.NORMAL,
+                success, failure);
+    }
+
+    /**
+     * @param tag      tag of the request, null for the default one
+     * @param priority priority of the request
+     */
+    private void listEntries(final Entry entry,
+                             final JSONObject parameters,
+                             final EntryParser parser,
+                             final boolean fullListing,
+                             final String tag,
+                             final Request.Priority priority,
+                             final OrangeListener.Success<Entry> success,
+                             final OrangeListener.Error failure) {
+
+        if (!isOnline()) {
+            listOffline(entry, parameters, success, failure);
+            return;
+        }
 
         String entryIdentifier = "";
         if (entry != null) {
@@ -234,7 +770,7 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         }
 
         // Create Tag used to cancel the request
-        final String tag = "Cloud/entries/list/" + entryIdentifier;
+        final String requestTag = (tag != null) ? tag : "Cloud/entries/list/" + entryIdentifier;
 
         // Prepare URL
         String url = API_URL + API_VERSION + "/folders/" + entryIdentifier;
@@ -251,20 +787,23 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                 e.printStackTrace();
             }
         }
-        session.getRestClient().jsonRequest(tag, Method.GET, url, null, getHeaders(),
-                new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().streamRequest(requestTag, url, headers, parser, priority,
+                new Response.Listener<Entry>() {
                     @Override
-                    public void onResponse(JSONObject response) {
-                        success.onResponse(new Entry(response));
+                    public void onResponse(Entry response) {
+                        success.onResponse(listed(response,
+                                fullListing && ListingCache.isFullListing(parameters)));
                     }
                 }, new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
                                 // retry request
-                                listEntries(entry, parameters, success, failure);
+                                listEntries(entry, parameters, parser, fullListing, tag, priority,
+                                        success, failure);
                             }
                         }, failure);
                     }
@@ -289,6 +828,37 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             throw new IllegalArgumentException("name must not be null or empty.");
         }
 
+        if (journalFirst((entry != null) ? entry.identifier : null)) {
+            final Entry folder = new Entry();
+            folder.identifier = OfflineJournal.newLocalIdentifier();
+            folder.type = Entry.Type.DIRECTORY;
+            folder.name = name;
+            folder.parentIdentifier = (entry != null) ? entry.identifier : null;
+            folder.contents = new ArrayList<Entry>();
+            folder.stale = true;
+            appendToJournal(new OfflineJournal.Operation(OfflineJournal.Operation.Type.CREATE_FOLDER,
+                    folder.identifier, true, folder.parentIdentifier, name, null, null),
+                    new OrangeListener.Success<OfflineJournal.Operation>() {
+                        @Override
+                        public void onResponse(OfflineJournal.Operation operation) {
+                            Entry created = canonical(folder, false);
+                            updateListings((entry != null) ? entry.identifier : "", null, created);
+                            success.onResponse(created);
+                        }
+                    }, failure);
+            return;
+        }
+        sendCreateFolder(resolved(entry), name, success, failure);
+    }
+
+    /**
+     * Create a new folder on the server, without going through the offline journal.
+     */
+    void sendCreateFolder(final Entry entry,
+                          final String name,
+                          final OrangeListener.Success<Entry> success,
+                          final OrangeListener.Error failure) {
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/folder/add/" + name;
 
@@ -306,18 +876,21 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         // Prepare URL
         final String url = API_URL + API_VERSION + "/folders/";
 
-        session.getRestClient().jsonRequest(tag, Method.POST, url, params, getHeaders(), new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().parsedRequest(tag, Method.POST, url, params, headers, EntryParser.ALL, new Response.Listener<Entry>() {
             @Override
-            public void onResponse(JSONObject response) {
-                success.onResponse(new Entry(response));
+            public void onResponse(Entry response) {
+                Entry folder = canonical(response, false);
+                updateListings((entry != null) ? entry.identifier : "", null, folder);
+                success.onResponse(folder);
             }
         }, new OrangeListener.Error() {
             @Override
             public void onErrorResponse(OrangeAPIException error) {
-                checkSession(error, new OrangeListener.Success<String>() {
+                checkSession(error, headers, new OrangeListener.Success<String>() {
                     @Override
                     public void onResponse(String response) {
-                        createFolder(entry, name, success, failure);
+                        sendCreateFolder(entry, name, success, failure);
                     }
                 }, failure);
             }
@@ -341,6 +914,32 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             throw new IllegalArgumentException("name must not be null or empty.");
         }
 
+        if (journalFirst(entry.identifier)) {
+            appendToJournal(new OfflineJournal.Operation(OfflineJournal.Operation.Type.RENAME,
+                    entry.identifier, entry.type == Entry.Type.DIRECTORY, entry.parentIdentifier,
+                    name, null, null), new OrangeListener.Success<OfflineJournal.Operation>() {
+                @Override
+                public void onResponse(OfflineJournal.Operation operation) {
+                    Entry renamed = pendingCopy(entry);
+                    renamed.name = name;
+                    renamed = canonical(renamed, false);
+                    updateListings(operation.getParentIdentifier(), renamed.identifier, renamed);
+                    success.onResponse(renamed);
+                }
+            }, failure);
+            return;
+        }
+        sendRename(resolved(entry), name, success, failure);
+    }
+
+    /**
+     * Rename an Entry on the server, without going through the offline journal.
+     */
+    void sendRename(final Entry entry,
+                    final String name,
+                    final OrangeListener.Success<Entry> success,
+                    final OrangeListener.Error failure) {
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/rename/" + name;
 
@@ -358,18 +957,24 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                 ? "/folders/"
                 : "/files/")
                 + entry.identifier;
-        session.getRestClient().jsonRequest(tag, Method.POST, url, params, getHeaders(), new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().parsedRequest(tag, Method.POST, url, params, headers, EntryParser.ALL, new Response.Listener<Entry>() {
             @Override
-            public void onResponse(JSONObject response) {
-                success.onResponse(new Entry(response));
+            public void onResponse(Entry response) {
+                String parent = !TextUtils.isEmpty(response.parentIdentifier)
+                        ? response.parentIdentifier : entry.parentIdentifier;
+                invalidateInfos(entry.identifier);
+                Entry renamed = canonical(response, false);
+                updateListings(parent, renamed.identifier, renamed);
+                success.onResponse(renamed);
             }
         }, new OrangeListener.Error() {
             @Override
             public void onErrorResponse(OrangeAPIException error) {
-                checkSession(error, new OrangeListener.Success<String>() {
+                checkSession(error, headers, new OrangeListener.Success<String>() {
                     @Override
                     public void onResponse(String response) {
-                        rename(entry, name, success, failure);
+                        sendRename(entry, name, success, failure);
                     }
                 }, failure);
             }
@@ -377,7 +982,9 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     }
 
     /**
-     * Copy an Entry (files or folders) in a new folder
+     * Copy an Entry (files or folders) in a new folder. A copy is not written to the offline
+     * journal: it fails while the device is offline or modifications are waiting to be sent,
+     * as it could not be ordered after them.
      *
      * @param entry   entry to copy
      * @param destination  the folder to copy
@@ -390,6 +997,23 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                      final OrangeListener.Error failure) {
 
 
+        if (journalFirst(entry.identifier, destination.identifier)) {
+            failure.onErrorResponse(new CloudAPIException(0, "pending_modifications",
+                    "Copy not available",
+                    "A copy cannot be made before the offline modifications are sent."));
+            return;
+        }
+        sendCopy(resolved(entry), resolved(destination), success, failure);
+    }
+
+    /**
+     * Copy an Entry on the server, without going through the offline journal.
+     */
+    private void sendCopy(final Entry entry,
+                          final Entry destination,
+                          final OrangeListener.Success<Entry> success,
+                          final OrangeListener.Error failure) {
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/copy/" + entry.name;
 
@@ -407,18 +1031,23 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                 ? "/folders/"
                 : "/files/")
                 + entry.identifier;
-        session.getRestClient().jsonRequest(tag, Method.POST, url, params, getHeaders(), new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().parsedRequest(tag, Method.POST, url, params, headers, EntryParser.ALL, new Response.Listener<Entry>() {
             @Override
-            public void onResponse(JSONObject response) {
-                success.onResponse(new Entry(response));
+            public void onResponse(Entry response) {
+                invalidateInfos(destination.identifier);
+                Entry copied = canonical(response, false);
+                updateListings(destination.identifier, null, copied);
+                adjustFreespace(copied, -1);
+                success.onResponse(copied);
             }
         }, new OrangeListener.Error() {
             @Override
             public void onErrorResponse(OrangeAPIException error) {
-                checkSession(error, new OrangeListener.Success<String>() {
+                checkSession(error, headers, new OrangeListener.Success<String>() {
                     @Override
                     public void onResponse(String response) {
-                        copy(entry, destination, success, failure);
+                        sendCopy(entry, destination, success, failure);
                     }
                 }, failure);
             }
@@ -439,6 +1068,34 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                      final OrangeListener.Error failure) {
 
 
+        if (journalFirst(entry.identifier, destination.identifier)) {
+            appendToJournal(new OfflineJournal.Operation(OfflineJournal.Operation.Type.MOVE,
+                    entry.identifier, entry.type == Entry.Type.DIRECTORY, entry.parentIdentifier,
+                    null, destination.identifier, null),
+                    new OrangeListener.Success<OfflineJournal.Operation>() {
+                        @Override
+                        public void onResponse(OfflineJournal.Operation operation) {
+                            Entry moved = pendingCopy(entry);
+                            moved.parentIdentifier = destination.identifier;
+                            moved = canonical(moved, false);
+                            updateListings(operation.getParentIdentifier(), moved.identifier, null);
+                            updateListings(destination.identifier, null, moved);
+                            success.onResponse(moved);
+                        }
+                    }, failure);
+            return;
+        }
+        sendMove(resolved(entry), resolved(destination), success, failure);
+    }
+
+    /**
+     * Move an Entry on the server, without going through the offline journal.
+     */
+    void sendMove(final Entry entry,
+                  final Entry destination,
+                  final OrangeListener.Success<Entry> success,
+                  final OrangeListener.Error failure) {
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/copy/" + entry.name;
 
@@ -455,18 +1112,25 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                 ? "/folders/"
                 : "/files/")
                 + entry.identifier;
-        session.getRestClient().jsonRequest(tag, Method.POST, url, params, getHeaders(), new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().parsedRequest(tag, Method.POST, url, params, headers, EntryParser.ALL, new Response.Listener<Entry>() {
             @Override
-            public void onResponse(JSONObject response) {
-                success.onResponse(new Entry(response));
+            public void onResponse(Entry response) {
+                // Read before the canonical entry is moved to its new parent
+                String source = entry.parentIdentifier;
+                invalidateInfos(entry.identifier);
+                Entry moved = canonical(response, false);
+                updateListings(source, moved.identifier, null);
+                updateListings(destination.identifier, null, moved);
+                success.onResponse(moved);
             }
         }, new OrangeListener.Error() {
             @Override
             public void onErrorResponse(OrangeAPIException error) {
-                checkSession(error, new OrangeListener.Success<String>() {
+                checkSession(error, headers, new OrangeListener.Success<String>() {
                     @Override
                     public void onResponse(String response) {
-                        move(entry, destination, success, failure);
+                        sendMove(entry, destination, success, failure);
                     }
                 }, failure);
             }
@@ -489,6 +1153,29 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             throw new IllegalArgumentException("entry must not be null or empty.");
         }
 
+        if (journalFirst(entry.identifier)) {
+            appendToJournal(new OfflineJournal.Operation(OfflineJournal.Operation.Type.DELETE,
+                    entry.identifier, entry.type == Entry.Type.DIRECTORY, entry.parentIdentifier,
+                    null, null, null), new OrangeListener.Success<OfflineJournal.Operation>() {
+                @Override
+                public void onResponse(OfflineJournal.Operation operation) {
+                    updateListings(operation.getParentIdentifier(), entry.identifier, null);
+                    identities.remove(entry.identifier);
+                    success.onResponse(null);
+                }
+            }, failure);
+            return;
+        }
+        sendDelete(resolved(entry), success, failure);
+    }
+
+    /**
+     * Delete an Entry on the server, without going through the offline journal.
+     */
+    void sendDelete(final Entry entry,
+                    final OrangeListener.Success<String> success,
+                    final OrangeListener.Error failure) {
+
         // Create Tag used to cancel the request
         final String tag = "Cloud/delete/" + entry.identifier;
 
@@ -499,19 +1186,32 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
                 : "/files/")
                 + entry.identifier;
 
-        session.getRestClient().stringRequest(tag, Method.DELETE, url, null, getHeaders(),
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().stringRequest(tag, Method.DELETE, url, null, headers,
                 new Response.Listener<String>() {
                     @Override
                     public void onResponse(String response) {
+                        updateListings(entry.parentIdentifier, entry.identifier, null);
+                        adjustFreespace(entry, 1);
+                        invalidateListings(entry.identifier);
+                        invalidateInfos(entry.identifier);
+                        identities.remove(entry.identifier);
+                        for (EntryImageCache.Variant variant : EntryImageCache.Variant.values()) {
+                            missingImages.remove(EntryImageCache.key(entry.identifier, variant));
+                        }
+                        EntryImageCache images = entryImageCache;
+                        if (images != null) {
+                            images.removeInBackground(entry.identifier);
+                        }
                         success.onResponse(response);
                     }
                 }, new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
-                                delete(entry, success, failure);
+                                sendDelete(entry, success, failure);
                             }
                         }, failure);
                     }
@@ -537,20 +1237,45 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         // Create Tag used to cancel the request
         final String tag = "Cloud/fileInfo/" + entry.identifier;
 
+        final MetadataCache cache = metadataCache;
+        if (!isOnline()) {
+            Entry info = (cache != null) ? cache.getAny(entry.identifier) : null;
+            if (info != null) {
+                entry.setExtraInfos(info);
+            } else if (!entry.extraInfoAvailable) {
+                failure.onErrorResponse(offlineError());
+                return;
+            }
+            Entry result = canonical(entry, false);
+            result.stale = true;
+            success.onResponse(result);
+            return;
+        }
+        Entry cached = (cache != null) ? cache.get(entry.identifier) : null;
+        if (cached != null) {
+            entry.setExtraInfos(cached);
+            success.onResponse(canonical(entry, false));
+            return;
+        }
+
         // Prepare URL
         final String url = API_URL + API_VERSION + "/files/" + entry.identifier;
 
-        session.getRestClient().jsonRequest(tag, Method.GET, url, null, getHeaders(),
-                new Response.Listener<JSONObject>() {
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().parsedRequest(tag, Method.GET, url, null, headers, EntryParser.extraInfos(),
+                new Response.Listener<Entry>() {
                     @Override
-                    public void onResponse(JSONObject response) {
+                    public void onResponse(Entry response) {
+                        if (cache != null) {
+                            cache.put(response);
+                        }
                         entry.setExtraInfos(response);
-                        success.onResponse(entry);
+                        success.onResponse(canonical(entry, false));
                     }
                 }, new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
                                 fileInfo(entry, success, failure);
@@ -570,30 +1295,30 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     public void thumbnail(final Entry entry,
                           final OrangeListener.Success<Bitmap> success,
                           final OrangeListener.Error failure) {
+        thumbnail(entry, ImageTarget.SCREEN, success, failure);
+    }
+
+    /**
+     * Download a thumbnail from Orange Cloud, decoded for a target size and configuration.
+     *
+     * @param entry   the entry metadata. Must be a file.
+     * @param target  size and configuration of the Bitmap
+     * @param success callback returning a Bitmap
+     * @param failure callback when error occurred
+     */
+    public void thumbnail(final Entry entry,
+                          final ImageTarget target,
+                          final OrangeListener.Success<Bitmap> success,
+                          final OrangeListener.Error failure) {
 
         if (entry == null) {
             throw new IllegalArgumentException("entry must not be null.");
         }
-        if (entry.thumbnailURL == null) {
+        if (entry.getThumbnailURL() == null) {
             throw new IllegalArgumentException("thumbnailURL must not be null. Make sure that a " +
                     "fileinfo() has been called before.");
         }
-
-        final String tag = "Cloud/thumbnail/" + entry.identifier;
-        final String url = entry.thumbnailURL;
-        session.getRestClient().imageRequest(tag, url, getHeaders(),
-                success,
-                new OrangeListener.Error() {
-                    @Override
-                    public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
-                            @Override
-                            public void onResponse(String response) {
-                                thumbnail(entry, success, failure);
-                            }
-                        }, failure);
-                    }
-                }, true);
+        image(entry, EntryImageCache.Variant.THUMBNAIL, target, success, failure);
     }
 
     /**
@@ -606,31 +1331,119 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     public void preview(final Entry entry,
                         final OrangeListener.Success<Bitmap> success,
                         final OrangeListener.Error failure) {
+        preview(entry, ImageTarget.SCREEN, success, failure);
+    }
+
+    /**
+     * Download a preview from Orange Cloud, decoded for a target size and configuration.
+     *
+     * @param entry   the entry metadata. Must be a file.
+     * @param target  size and configuration of the Bitmap
+     * @param success callback returning a Bitmap
+     * @param failure callback when error occurred
+     */
+    public void preview(final Entry entry,
+                        final ImageTarget target,
+                        final OrangeListener.Success<Bitmap> success,
+                        final OrangeListener.Error failure) {
 
         if (entry == null) {
             throw new IllegalArgumentException("entry must not be null.");
         }
-        if (entry.previewURL == null) {
+        if (entry.getPreviewURL() == null) {
             throw new IllegalArgumentException("previewURL must not be null. Make sure that a " +
                     "fileinfo() has been called before.");
         }
+        image(entry, EntryImageCache.Variant.PREVIEW, target, success, failure);
+    }
 
-        final String tag = "Cloud/preview/" + entry.identifier;
-        final String url = entry.previewURL;
+    /**
+     * Download the image of an entry that best matches a target size: its thumbnail for
+     * targets up to {@link ImageTarget#THUMBNAIL_MAX_SIZE}, else its preview. Falls back to
+     * the other one when the best one is not available.
+     *
+     * @param entry   the entry metadata. Must be a file.
+     * @param target  size and configuration of the Bitmap
+     * @param success callback returning a Bitmap
+     * @param failure callback when error occurred
+     */
+    public void image(final Entry entry,
+                      final ImageTarget target,
+                      final OrangeListener.Success<Bitmap> success,
+                      final OrangeListener.Error failure) {
 
-        session.getRestClient().imageRequest(tag, url, getHeaders(),
-                success,
-                new OrangeListener.Error() {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry must not be null.");
+        }
+        boolean hasThumbnail = !TextUtils.isEmpty(entry.getThumbnailURL());
+        boolean hasPreview = !TextUtils.isEmpty(entry.getPreviewURL());
+        if (!hasThumbnail && !hasPreview) {
+            throw new IllegalArgumentException("thumbnailURL or previewURL must not be null. " +
+                    "Make sure that a fileinfo() has been called before.");
+        }
+        boolean thumbnail = hasThumbnail && (target.fitsThumbnail() || !hasPreview);
+        image(entry, thumbnail ? EntryImageCache.Variant.THUMBNAIL : EntryImageCache.Variant.PREVIEW,
+                target, success, failure);
+    }
+
+    private void image(final Entry entry,
+                       final EntryImageCache.Variant variant,
+                       final ImageTarget target,
+                       final OrangeListener.Success<Bitmap> success,
+                       final OrangeListener.Error failure) {
+        image(entry, variant, target, null, Request.Priority.NORMAL, success, failure);
+    }
+
+    /**
+     * @param requestTag tag of the request, null for the default one
+     * @param priority   priority of the request, only used with an entry image cache
+     */
+    private void image(final Entry entry,
+                       final EntryImageCache.Variant variant,
+                       final ImageTarget target,
+                       final String requestTag,
+                       final Request.Priority priority,
+                       final OrangeListener.Success<Bitmap> success,
+                       final OrangeListener.Error failure) {
+
+        final boolean thumbnail = variant == EntryImageCache.Variant.THUMBNAIL;
+        final String tag = (requestTag != null) ? requestTag
+                : (thumbnail ? "Cloud/thumbnail/" : "Cloud/preview/") + entry.identifier;
+        final String url = thumbnail ? entry.getThumbnailURL() : entry.getPreviewURL();
+        final String key = EntryImageCache.key(entry.identifier, variant);
+
+        // Do not ask again for an image the server just said it does not have
+        int missing = missingImages.get(key);
+        if (missing != 0) {
+            failure.onErrorResponse(new CloudAPIException(missing, "",
+                    "No image available for this entry", ""));
+            return;
+        }
+
+        final Map<String, String> headers = getHeaders();
+        OrangeListener.Error retry = new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                if (isMissingImage(error)) {
+                    missingImages.put(key, error.getStatusCode());
+                    failure.onErrorResponse(error);
+                    return;
+                }
+                checkSession(error, headers, new OrangeListener.Success<String>() {
                     @Override
-                    public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
-                            @Override
-                            public void onResponse(String response) {
-                                preview(entry, success, failure);
-                            }
-                        }, failure);
+                    public void onResponse(String response) {
+                        image(entry, variant, target, requestTag, priority, success, failure);
                     }
-                }, true);
+                }, failure);
+            }
+        };
+        EntryImageCache cache = entryImageCache;
+        if (cache != null) {
+            session.getRestClient().imageRequest(tag, url, headers, cache, key, target,
+                    priority, success, retry);
+        } else {
+            session.getRestClient().imageRequest(tag, url, headers, target, success, retry, true);
+        }
     }
 
     /**
@@ -643,28 +1456,44 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     public void imageContent(final Entry entry,
                              final OrangeListener.Success<Bitmap> success,
                              final OrangeListener.Error failure) {
+        imageContent(entry, ImageTarget.SCREEN, success, failure);
+    }
+
+    /**
+     * Download image content from Orange Cloud, decoded for a target size and configuration.
+     *
+     * @param entry   the entry metadata. Must be a file.
+     * @param target  size and configuration of the Bitmap
+     * @param success callback returning a Bitmap
+     * @param failure callback when error occurred
+     */
+    public void imageContent(final Entry entry,
+                             final ImageTarget target,
+                             final OrangeListener.Success<Bitmap> success,
+                             final OrangeListener.Error failure) {
 
         if (entry == null) {
             throw new IllegalArgumentException("entry must not be null.");
         }
-        if (entry.downloadURL == null) {
+        if (entry.getDownloadURL() == null) {
             throw new IllegalArgumentException("downloadURL must not be null. Make sure that a " +
                     "fileinfo() has been called before.");
         }
 
 
         final String tag = "Cloud/content/" + entry.identifier;
-        final String url = entry.downloadURL;
+        final String url = entry.getDownloadURL();
 
-        session.getRestClient().imageRequest(tag, url, getHeaders(),
+        final Map<String, String> headers = getHeaders();
+        session.getRestClient().imageRequest(tag, url, headers, target,
                 success,
                 new OrangeListener.Error() {
                     @Override
                     public void onErrorResponse(OrangeAPIException error) {
-                        checkSession(error, new OrangeListener.Success<String>() {
+                        checkSession(error, headers, new OrangeListener.Success<String>() {
                             @Override
                             public void onResponse(String response) {
-                                imageContent(entry, success, failure);
+                                imageContent(entry, target, success, failure);
                             }
                         }, failure);
                     }
@@ -684,56 +1513,102 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     public void upload(final Uri fileUri, final String filename, final Entry entry, final OrangeListener.Success<JSONObject> success,
                        final OrangeListener.Progress progress, final OrangeListener.Error failure) {
 
+        if (journalFirst(entry.identifier)) {
+            InputStream content;
+            try {
+                content = session.getRestClient().openInputStream(fileUri);
+            } catch (OrangeCloudOperationException e) {
+                failure.onErrorResponse(new CloudAPIException(e));
+                return;
+            }
+            offlineJournal.appendUpload(entry.identifier, filename, content,
+                    new OrangeListener.Success<OfflineJournal.Operation>() {
+                        @Override
+                        public void onResponse(OfflineJournal.Operation operation) {
+                            JSONObject queued = new JSONObject();
+                            try {
+                                queued.put("fileName", filename);
+                                queued.put("queued", true);
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                            }
+                            success.onResponse(queued);
+                            replayJournal();
+                        }
+                    }, failure);
+            return;
+        }
+        sendUpload(fileUri, filename, resolved(entry), success, progress, failure);
+    }
+
+    /**
+     * Upload a file to the server, without going through the offline journal.
+     */
+    void sendUpload(final Uri fileUri, final String filename, final Entry entry,
+                    final OrangeListener.Success<JSONObject> success,
+                    final OrangeListener.Progress progress, final OrangeListener.Error failure) {
+
         URL url;
         try {
-            url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name=" + filename
-                    + "&folder=" + entry.identifier);
+            url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name="
+                    + queryValue(filename) + "&folder=" + queryValue(entry.identifier));
 
-            session.getRestClient().uploadRequest(url, fileUri, getHeaders(),
+            final Map<String, String> headers = getHeaders();
+            session.getRestClient().uploadRequest(url, fileUri, headers,
                     new Response.Listener<JSONObject>() {
                         @Override
                         public void onResponse(JSONObject response) {
+                            invalidateListings(entry.identifier);
+                            invalidateInfos(entry.identifier);
+                            long size = response.optLong("size", -1);
+                            if (size >= 0) {
+                                freespaceTracker.adjust(-size);
+                            } else {
+                                freespaceTracker.invalidate();
+                            }
                             success.onResponse(response);
                         }
                     }, progress,
                     new OrangeListener.Error() {
                         @Override
                         public void onErrorResponse(OrangeAPIException error) {
-                            checkSession(error, new OrangeListener.Success<String>() {
+                            checkSession(error, headers, new OrangeListener.Success<String>() {
                                 @Override
                                 public void onResponse(String response) {
-                                    upload(fileUri, filename, entry, success, progress, failure);
+                                    sendUpload(fileUri, filename, entry, success, progress, failure);
                                 }
                             }, failure);
                         }
                     });
-        } catch (MalformedURLException e) {
+        } catch (IOException e) {
+            // Malformed URL or unsupported encoding
             e.printStackTrace();
+            failure.onErrorResponse(new CloudAPIException(e));
         }
     }
 
+    private static String queryValue(String value) throws UnsupportedEncodingException {
+        return (value != null) ? URLEncoder.encode(value, "UTF-8").replace("+", "%20") : "";
+    }
+
     /**
      * Method is called if an Api call returned an error. It checks if the error is a session
-     * problem. If true, method checks if the OAuth access token is still valid (refresh if needed)
-     * and re-open a session.
-     * Normally it will be simplified and removed in future version.
+     * problem. If true, the request is replayed once the OAuth access token has been refreshed
+     * (see {@link TokenRefresher}), otherwise the error is returned.
      *
      * @param error   The error exception returned by an api call.
+     * @param headers headers the failed request was sent with
      * @param success callback when session is re-opened without error
      * @param failure callback when error occurred
      */
     private void checkSession(final OrangeAPIException error,
+                              final Map<String, String> headers,
                               final OrangeListener.Success<String> success,
                               final OrangeListener.Error failure) {
 
         // Check error code to know if SESSION_EXPIRED
         if (error.getStatusCode() == 401) {
-            session.refresh(new OrangeListener.Success<String>() {
-                @Override
-                public void onResponse(String response) {
-                    success.onResponse(null);
-                }
-            }, failure);
+            tokenRefresher.unauthorized(headers.get("Authorization"), error, success, failure);
         } else {
             // Normal error
             failure.onErrorResponse(error);
@@ -741,33 +1616,410 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
     }
 
     /**
-     * Generate a Map containing the HTTP headers needed to Cloud Api.
+     * @return true if an image request failed because the server has no such image, or an
+     * image it cannot decode
+     */
+    private static boolean isMissingImage(OrangeAPIException error) {
+        int status = error.getStatusCode();
+        return status == 404 || status == 415
+                || (status == 200 && error.getCause() instanceof ParseError);
+    }
+
+    /**
+     * Drop the cached listings of folders modified by a request.
+     *
+     * @param folderIdentifiers identifiers of the modified folders, null values are ignored
+     */
+    private void invalidateListings(String... folderIdentifiers) {
+        for (String identifier : folderIdentifiers) {
+            uploadDeduplicator.invalidate(identifier);
+        }
+        invalidateCachedListings(folderIdentifiers);
+    }
+
+    /**
+     * Drop the cached listings of folders modified by a synchronus upload. The listing known
+     * by the upload deduplicator is kept, it records the uploaded files itself.
+     *
+     * @param folderIdentifiers identifiers of the modified folders, "" for the root
+     */
+    private void invalidateCachedListings(String... folderIdentifiers) {
+        ListingCache cache = listingCache;
+        if (cache == null) {
+            return;
+        }
+        for (String identifier : folderIdentifiers) {
+            if (identifier != null) {
+                cache.invalidate(identifier);
+            }
+        }
+    }
+
+    /**
+     * Apply the change made by a successful request to the cached listings of a folder, so
+     * that it is shown at once. Listeners of the identity map are notified of the new contents
+     * of the folder, and the listings are revalidated against the server in background.
+     *
+     * @param folderIdentifier  identifier of the modified folder, "" for the root, ignored if
+     *                          null
+     * @param removedIdentifier identifier of a child removed from the folder, null for none
+     * @param added             a child added to the folder, null for none
+     */
+    private void updateListings(String folderIdentifier, String removedIdentifier, Entry added) {
+        uploadDeduplicator.invalidate(folderIdentifier);
+        if (folderIdentifier == null) {
+            return;
+        }
+        final ListingCache cache = listingCache;
+        Map<String, Entry> updated = (cache != null)
+                ? cache.update(folderIdentifier, removedIdentifier, added)
+                : Collections.<String, Entry>emptyMap();
+        if (updated.isEmpty()) {
+            if (cache != null) {
+                // Listings of the folder only on disk are outdated
+                cache.invalidate(folderIdentifier);
+            }
+            updateCanonicalFolder(folderIdentifier, removedIdentifier, added);
+            return;
+        }
+        boolean first = true;
+        for (Map.Entry<String, Entry> listing : updated.entrySet()) {
+            final String key = listing.getKey();
+            Entry folder = listing.getValue();
+            if (first) {
+                folder = canonical(folder, true);
+                first = false;
+            }
+            if (!isOnline()) {
+                // Revalidated once the journal is replayed
+                folder.stale = true;
+                continue;
+            }
+            // The root is listed without identifier
+            Entry listed = key.startsWith("?") ? null : folder;
+            listEntries(listed, ListingCache.parameters(key), EntryParser.ALL, true,
+                    new OrangeListener.Success<Entry>() {
+                        @Override
+                        public void onResponse(Entry response) {
+                            cache.put(key, response);
+                        }
+                    }, new OrangeListener.Error() {
+                        @Override
+                        public void onErrorResponse(OrangeAPIException error) {
+                            // Ask the server again when the folder is next listed
+                            cache.invalidate(key.substring(0, key.indexOf('?')));
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Apply a change to the contents of the canonical entry of a folder, when none of its
+     * listings is cached in memory, so that the listeners of the identity map still see it.
+     *
+     * @param folderIdentifier  identifier of the modified folder
+     * @param removedIdentifier identifier of a child removed from the folder, null for none
+     * @param added             a child added to the folder, null for none
+     */
+    private void updateCanonicalFolder(String folderIdentifier, String removedIdentifier,
+                                       Entry added) {
+        Entry folder = identities.get(folderIdentifier);
+        if (folder == null) {
+            return;
+        }
+        Entry changed;
+        synchronized (folder) {
+            if (folder.contents == null) {
+                return;
+            }
+            changed = ListingCache.withChange(folder, removedIdentifier, added);
+        }
+        if (!isOnline()) {
+            // Revalidated once the journal is replayed
+            changed.stale = true;
+        }
+        canonical(changed, true);
+    }
+
+    /**
+     * Download the image of an entry into the entry image cache at low priority, so that it
+     * is displayed at once when requested for the same target.
+     *
+     * @param entry   the entry, ignored if it has no image
+     * @param target  the target the image will be requested for
+     * @param tag     tag to cancel the request with {@link #cancelPrefetch(String)}
+     * @param success callback returning the Bitmap, to be released once it is not used
+     * @param failure callback when error occurred
+     * @return false if nothing has been requested
+     */
+    boolean prefetchImage(Entry entry,
+                          ImageTarget target,
+                          String tag,
+                          OrangeListener.Success<Bitmap> success,
+                          OrangeListener.Error failure) {
+        if (entryImageCache == null || !isOnline()) {
+            return false;
+        }
+        boolean hasThumbnail = !TextUtils.isEmpty(entry.getThumbnailURL());
+        boolean hasPreview = !TextUtils.isEmpty(entry.getPreviewURL());
+        if (!hasThumbnail && !hasPreview) {
+            return false;
+        }
+        boolean thumbnail = hasThumbnail && (target.fitsThumbnail() || !hasPreview);
+        image(entry, thumbnail ? EntryImageCache.Variant.THUMBNAIL : EntryImageCache.Variant.PREVIEW,
+                target, tag, Request.Priority.LOW, success, failure);
+        return true;
+    }
+
+    /**
+     * List a folder into the listing cache at low priority, unless its cached listing is
+     * still fresh.
+     *
+     * @param entry      the folder
+     * @param parameters parameters of the listing, as they will be requested
+     * @param tag        tag to cancel the request with {@link #cancelPrefetch(String)}
+     * @param success    callback returning the folder
+     * @param failure    callback when error occurred
+     * @return false if nothing has been requested
+     */
+    boolean prefetchListing(Entry entry,
+                            JSONObject parameters,
+                            String tag,
+                            OrangeListener.Success<Entry> success,
+                            OrangeListener.Error failure) {
+        final ListingCache cache = listingCache;
+        if (cache == null || !isOnline()) {
+            return false;
+        }
+        final String key = ListingCache.key(entry.identifier, parameters);
+        // Only the memory is looked up, listings on disk are opened by ListingCache#warm()
+        ListingCache.Listing cached = cache.peek(key);
+        if (cached != null && !cache.isStale(cached)) {
+            return false;
+        }
+        final OrangeListener.Success<Entry> done = success;
+        listEntries(entry, parameters, EntryParser.ALL, true, tag, Request.Priority.LOW,
+                new OrangeListener.Success<Entry>() {
+                    @Override
+                    public void onResponse(Entry response) {
+                        cache.put(key, response);
+                        done.onResponse(response);
+                    }
+                }, failure);
+        return true;
+    }
+
+    /**
+     * Cancel a prefetch. Its callbacks are not called.
+     *
+     * @param tag tag of the prefetch
+     */
+    void cancelPrefetch(String tag) {
+        session.getRestClient().cancel(tag);
+    }
+
+    /**
+     * Serve a listing from the listing cache, while offline.
+     */
+    private void listOffline(Entry entry,
+                             final JSONObject parameters,
+                             final OrangeListener.Success<Entry> success,
+                             final OrangeListener.Error failure) {
+        ListingCache cache = listingCache;
+        if (cache == null) {
+            failure.onErrorResponse(offlineError());
+            return;
+        }
+        cache.get(ListingCache.key((entry != null) ? entry.identifier : "", parameters),
+                new OrangeListener.Success<ListingCache.Listing>() {
+                    @Override
+                    public void onResponse(ListingCache.Listing cached) {
+                        if (cached == null) {
+                            failure.onErrorResponse(offlineError());
+                            return;
+                        }
+                        Entry folder = listed(ListingCache.detached(cached.entry),
+                                ListingCache.isFullListing(parameters));
+                        folder.stale = true;
+                        success.onResponse(folder);
+                    }
+                });
+    }
+
+    /**
+     * Copy of an entry modified offline, flagged as stale until the server applies the change.
+     */
+    private static Entry pendingCopy(Entry entry) {
+        Entry copy = new Entry();
+        copy.identifier = entry.identifier;
+        copy.updateFrom(entry, false);
+        copy.stale = true;
+        return copy;
+    }
+
+    /**
+     * Remove a folder created offline from the cached listings, before it is created on the
+     * server by the replay of the journal.
+     *
+     * @param parentIdentifier identifier of its parent folder, null for the root
+     * @param localIdentifier  its local identifier
+     */
+    void forgetProvisional(String parentIdentifier, String localIdentifier) {
+        ListingCache cache = listingCache;
+        if (cache != null) {
+            cache.update((parentIdentifier != null) ? parentIdentifier : "", localIdentifier, null);
+        }
+        identities.remove(localIdentifier);
+    }
+
+    private static OrangeAPIException offlineError() {
+        return new CloudAPIException(0, "offline", "No network connection",
+                "The request cannot be served from the local caches.");
+    }
+
+    /**
+     * Account for the size of a file created or deleted by a request. The free space is asked
+     * to the server again when the size is not known, e.g. for a folder.
+     *
+     * @param entry the file
+     * @param sign  1 if the file was deleted, -1 if it was created
+     */
+    private void adjustFreespace(Entry entry, long sign) {
+        if (entry.type != Entry.Type.DIRECTORY && entry.size != null) {
+            freespaceTracker.adjust(sign * entry.bytes);
+        } else {
+            freespaceTracker.invalidate();
+        }
+    }
+
+    /**
+     * Drop the cached information of entries modified by a request, and of their children.
+     *
+     * @param identifiers identifiers of the modified entries, null values are ignored
+     */
+    private void invalidateInfos(String... identifiers) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) {
+            return;
+        }
+        for (String identifier : identifiers) {
+            if (identifier != null) {
+                cache.invalidate(identifier);
+                cache.invalidateFolder(identifier);
+            }
+        }
+    }
+
+    /**
+     * Resolve an Entry received from the server to its canonical instance.
+     *
+     * @param entry        the Entry received
+     * @param withContents true if the Entry holds the whole listing of its contents
+     * @return the canonical Entry
+     */
+    /**
+     * Resolve the folder of a listing. A full listing replaces the contents of the canonical
+     * folder. The children of a filtered or paged listing are only delivered to the caller:
+     * the canonical folder is updated without them and the listed folder is returned as is.
+     *
+     * @param folder      the listed folder, not shared with a cache
+     * @param fullListing true if every child of the folder is listed
+     */
+    private Entry listed(Entry folder, boolean fullListing) {
+        if (fullListing) {
+            return canonical(folder, true);
+        }
+        if (folder.contents instanceof LazyEntryList) {
+            ((LazyEntryList) folder.contents).setIdentityMap(identities);
+        }
+        Entry values = new Entry();
+        values.identifier = folder.identifier;
+        values.updateFrom(folder, false);
+        identities.resolve(values, false);
+        return folder;
+    }
+
+    private Entry canonical(Entry entry, boolean withContents) {
+        if (entry.contents instanceof LazyEntryList) {
+            ((LazyEntryList) entry.contents).setIdentityMap(identities);
+        }
+        return identities.resolve(entry, withContents);
+    }
+
+    /**
+     * Generate a Map containing the HTTP headers needed to Cloud Api. The map is built once per
+     * access token and shared by the requests, it cannot be modified.
      *
      * @return a Map containing minimal headers needed to Cloud Api
      */
     public Map<String, String> getHeaders() {
-        HashMap<String, String> headers = new HashMap<String, String>();
-        headers.put("Authorization", "Bearer " + getSession().getAccessToken());
-        headers.put("X-OAPI-Agent", "Android-" + SDK_VERSION);
-        Log.v("Authorization: ", "Bearer " + getSession().getAccessToken());
-        Log.v("X-OAPI-Agent:", "Android-" + SDK_VERSION);
-        return headers;
+        String accessToken = session.getAccessToken();
+        AuthHeaders cached = authHeaders;
+        if (cached == null || !cached.accessToken.equals(accessToken)) {
+            HashMap<String, String> headers = new HashMap<String, String>();
+            headers.put("Authorization", "Bearer " + accessToken);
+            headers.put("X-OAPI-Agent", "Android-" + SDK_VERSION);
+            cached = new AuthHeaders(accessToken, Collections.unmodifiableMap(headers));
+            authHeaders = cached;
+        }
+        return cached.headers;
+    }
+
+    /**
+     * Headers of an access token.
+     */
+    private static final class AuthHeaders {
+        final String accessToken;
+        final Map<String, String> headers;
+
+        AuthHeaders(String accessToken, Map<String, String> headers) {
+            this.accessToken = String.valueOf(accessToken);
+            this.headers = headers;
+        }
     }
 
 
+    /**
+     * Enable or disable the skip-if-identical check of synchronus uploads. When enabled,
+     * {@link #uploadFileSynchronus(Uri, String, String)} and
+     * {@link #uploadStreamSynchronus(String, String, InputStream, long)} first look for a file
+     * with the same name and size (and the same MD5 when the server provides one) in the target
+     * folder and return it instead of uploading the content again.
+     *
+     * @param skip true to skip uploads of files already present in the target folder
+     */
+    public void setSkipIdenticalUploads(boolean skip) {
+        uploadDeduplicator.setEnabled(skip);
+    }
+
     /**
      * Synchronus file upload to the Orange Cloud
      *
      * @param fileUri  Uri of file to upload
      * @param parentId unique identifier of the parent folder
      * @param filename name of file to upload
+     * @return the uploaded Entry, or the identical Entry already present in the folder
      */
-    public void uploadFileSynchronus(final Uri fileUri, final String parentId, final String filename) throws OrangeCloudOperationException, OrangeAPIException {
+    public Entry uploadFileSynchronus(final Uri fileUri, final String parentId, final String filename) throws OrangeCloudOperationException, OrangeAPIException {
         try {
+            long length = -1;
+            if (uploadDeduplicator.isEnabled()) {
+                length = session.getRestClient().contentLength(fileUri);
+                Entry existing = uploadDeduplicator.findIdentical(parentId, filename, length, fileUri);
+                if (existing != null) {
+                    return canonical(existing, false);
+                }
+            }
+
             URL url = null;
             if(null!=parentId) url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name=" + filename + "&folder=" + parentId);
             else url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name=" + filename);
-            session.getRestClient().uploadRequestSynchronus(url, fileUri, getHeaders());
+            JSONObject response = session.getRestClient().uploadRequestSynchronus(url, fileUri, getHeaders());
+            invalidateCachedListings((parentId != null) ? parentId : "");
+            invalidateInfos(parentId);
+            Entry uploaded = canonical(uploadDeduplicator.uploaded(response, parentId, filename, length), false);
+            adjustFreespace(uploaded, -1);
+            return uploaded;
         } catch (MalformedURLException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
@@ -797,17 +2049,59 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
      * @param parentId unique identifier of the parent folder
      * @param filename name of file to upload
      * @param inputStream input stream of file to upload
-     * @return success or failure
+     * @return the uploaded Entry
      */
-    public void uploadStreamSynchronus(final String parentId, final String filename, InputStream inputStream) throws OrangeCloudOperationException, OrangeAPIException {
+    public Entry uploadStreamSynchronus(final String parentId, final String filename, InputStream inputStream) throws OrangeCloudOperationException, OrangeAPIException {
+        return uploadStreamSynchronus(parentId, filename, inputStream, -1);
+    }
+
+    /**
+     * Synchronus stream upload to the Orange Cloud
+     *
+     * @param parentId unique identifier of the parent folder
+     * @param filename name of file to upload
+     * @param inputStream input stream of file to upload
+     * @param length size of the stream in bytes, or -1 if unknown (disables the
+     *               skip-if-identical check)
+     * @return the uploaded Entry, or the identical Entry already present in the folder
+     */
+    public Entry uploadStreamSynchronus(final String parentId, final String filename, InputStream inputStream, long length) throws OrangeCloudOperationException, OrangeAPIException {
+        File spooled = null;
         try {
+            if (uploadDeduplicator.isEnabled() && length >= 0) {
+                Uri contentUri = null;
+                if (uploadDeduplicator.needsMd5(parentId, filename, length)) {
+                    // The stream is read twice: once for its MD5, once to upload it
+                    spooled = session.getRestClient().spool(inputStream);
+                    contentUri = Uri.fromFile(spooled);
+                    inputStream = new FileInputStream(spooled);
+                }
+                Entry existing = uploadDeduplicator.findIdentical(parentId, filename, length, contentUri);
+                if (existing != null) {
+                    inputStream.close();
+                    return canonical(existing, false);
+                }
+            }
+
             URL url = null;
             if(null!=parentId) url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name=" + filename + "&folder=" + parentId);
             else url = new URL(API_CONTENT_URL + API_VERSION + "/files/content?name=" + filename);
-            session.getRestClient().uploadRequestStreamSynchronus(url, inputStream, getHeaders());
+            JSONObject response = session.getRestClient().uploadRequestStreamSynchronus(url, inputStream, getHeaders());
+            invalidateCachedListings((parentId != null) ? parentId : "");
+            invalidateInfos(parentId);
+            Entry uploaded = canonical(uploadDeduplicator.uploaded(response, parentId, filename, length), false);
+            adjustFreespace(uploaded, -1);
+            return uploaded;
         } catch (MalformedURLException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        } finally {
+            if (spooled != null) {
+                spooled.delete();
+            }
         }
     }
 
@@ -821,13 +2115,39 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         }
     }
 
+    /**
+     * Synchronus listing of a folder, as returned by the server. The whole listing is held as
+     * a JSONObject: prefer {@link #listEntriesSynchronus(String)} for big folders.
+     *
+     * @param folderId unique identifier of the folder, null for the root folder
+     * @return the JSON listing
+     */
     public JSONObject listFolderSynchronus(String folderId) throws SynchronusException {
-        String tag = "Cloud/folder/list/";
+        return session.getRestClient().streamRequestSynchronus(folderURL(folderId), getHeaders(), JsonStreams.JSON_OBJECT);
+    }
+
+    /**
+     * Synchronus listing of a folder. Its children are kept in a compact {@link EntryTable}
+     * and only created when they are accessed, so big folders use a few megabytes of heap.
+     *
+     * @param folderId unique identifier of the folder, null for the root folder
+     * @return the folder Entry with its contents
+     */
+    public Entry listEntriesSynchronus(String folderId) throws SynchronusException {
+        return session.getRestClient().streamRequestSynchronus(folderURL(folderId), getHeaders(), EntryParser.ALL);
+    }
+
+    private static String folderURL(String folderId) {
         String url = API_URL + API_VERSION + "/folders/";
         if(null!=folderId) {
-            tag+=folderId;
             url+=folderId;
         }
+        return url;
+    }
+
+    public JSONObject fileInfoSynchronus(String fileId) throws SynchronusException {
+        String tag = "Cloud/fileInfo/" + fileId;
+        String url = API_URL + API_VERSION + "/files/" + fileId;
 
         return session.getRestClient().jsonRequestSynchronus(tag, url, getHeaders());
     }
@@ -837,10 +2157,6 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
      */
     public static class Entry {
 
-        /**
-         * Date format returned by Server. Use to convert creationDate
-         */
-        private static SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZZZ");
         /**
          * The unique identifier for the file or folder
          */
@@ -877,20 +2193,22 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
         public Date creationDate;
 
         /**
-         * The URL to download a preview thumbnail, only available for plain files
-         */
-        public String downloadURL;
-
-        /**
-         * The URL to download a graphical representation suitable to be displayed in full screen
-         * on a mobile device, only available for some file type (photo, pdf, ...)
+         * URLs of the file, kept as a shared template and a suffix (see the URL getters)
          */
-        public String previewURL;
+        private UrlTemplate downloadTemplate;
+        private String downloadSuffix;
+        private UrlTemplate previewTemplate;
+        private String previewSuffix;
+        private UrlTemplate thumbnailTemplate;
+        private String thumbnailSuffix;
+        /** Identifier the URLs have been split with. */
+        private String urlIdentifier;
 
         /**
-         * The URL to download the file itself, only available for plain files
+         * The MD5 of the file content as returned by the server, or an empty string when the
+         * server does not provide it
          */
-        public String thumbnailURL;
+        public String md5;
 
         /**
          * A flag set to {@code true} when extra information (i.e. bytes, urls, creation time)
@@ -898,6 +2216,12 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
          */
         public boolean extraInfoAvailable;
 
+        /**
+         * Set while the entry comes from the local caches without network, or holds a change
+         * made offline that the server has not applied yet.
+         */
+        boolean stale;
+
         /**
          * A list of immediate children if this is a directory.
          */
@@ -922,27 +2246,23 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
          */
         public Entry(JSONObject jsonObject) {
 
-            identifier = jsonObject.optString("id");
+            identifier = Interner.intern(jsonObject.optString("id"));
             name = jsonObject.optString("name");
-            parentIdentifier = jsonObject.optString("parentId");
+            parentIdentifier = Interner.intern(jsonObject.optString("parentId"));
 
             // Define type of metatdata entry
-            String entryType = jsonObject.optString("type");
-            if (entryType == null || TextUtils.isEmpty(entryType)) {
-                type = Type.DIRECTORY;
-            } else if (entryType.equals("FILE")) {
-                type = Type.FILE;
-            } else if (entryType.equals("PICTURE")) {
-                type = Type.IMAGE;
-            } else if (entryType.equals("VIDEO")) {
-                type = Type.VIDEO;
-            } else if (entryType.equals("MUSIC")) {
-                type = Type.MUSIC;
-            }
+            type = typeOf(jsonObject.optString("type"));
+
+            setDownloadURL(jsonObject.optString("downloadUrl"));
+            setPreviewURL(jsonObject.optString("previewUrl"));
+            setThumbnailURL(jsonObject.optString("thumbUrl"));
 
-            downloadURL = jsonObject.optString("downloadUrl");
-            previewURL = jsonObject.optString("previewUrl");
-            thumbnailURL = jsonObject.optString("thumbUrl");
+            // Size and hash are sometimes already part of a listing
+            if (jsonObject.has("size")) {
+                bytes = jsonObject.optLong("size");
+                size = humanReadableByteCount(bytes, true);
+            }
+            md5 = jsonObject.optString("md5");
 
             // If it is folder check if directory contains sub folders and files.
             if (this.type == Type.DIRECTORY) {
@@ -972,7 +2292,123 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             //metadata = new Metadata(jsonObject.optJSONObject("metadata"));
         }
 
-        private static String humanReadableByteCount(long bytes, boolean si) {
+        /**
+         * @return true if this entry may be out of date, see {@link OrangeCloudAPI#setOfflineJournal}
+         */
+        public boolean isStale() {
+            return stale;
+        }
+
+        /**
+         * @return the URL to download the file itself, only available for plain files
+         */
+        public String getDownloadURL() {
+            return expand(downloadTemplate, downloadSuffix);
+        }
+
+        /**
+         * @param url the URL to download the file itself
+         */
+        public void setDownloadURL(String url) {
+            downloadTemplate = template(url);
+            downloadSuffix = suffix(downloadTemplate, url);
+        }
+
+        /**
+         * @return the URL to download a graphical representation suitable to be displayed in
+         * full screen on a mobile device, only available for some file type (photo, pdf, ...)
+         */
+        public String getPreviewURL() {
+            return expand(previewTemplate, previewSuffix);
+        }
+
+        /**
+         * @param url the URL to download a preview of the file
+         */
+        public void setPreviewURL(String url) {
+            previewTemplate = template(url);
+            previewSuffix = suffix(previewTemplate, url);
+        }
+
+        /**
+         * @return the URL to download a preview thumbnail, only available for plain files
+         */
+        public String getThumbnailURL() {
+            return expand(thumbnailTemplate, thumbnailSuffix);
+        }
+
+        /**
+         * @param url the URL to download a thumbnail of the file
+         */
+        public void setThumbnailURL(String url) {
+            thumbnailTemplate = template(url);
+            thumbnailSuffix = suffix(thumbnailTemplate, url);
+        }
+
+        private UrlTemplate template(String url) {
+            if (url == null || url.length() == 0) {
+                return null;
+            }
+            if (urlIdentifier != identifier) {
+                // Keep the URLs already set consistent with the identifier they were split with
+                String download = getDownloadURL();
+                String preview = getPreviewURL();
+                String thumbnail = getThumbnailURL();
+                urlIdentifier = identifier;
+                downloadTemplate = (download != null && download.length() > 0)
+                        ? UrlTemplate.of(download, identifier) : null;
+                downloadSuffix = suffix(downloadTemplate, download);
+                previewTemplate = (preview != null && preview.length() > 0)
+                        ? UrlTemplate.of(preview, identifier) : null;
+                previewSuffix = suffix(previewTemplate, preview);
+                thumbnailTemplate = (thumbnail != null && thumbnail.length() > 0)
+                        ? UrlTemplate.of(thumbnail, identifier) : null;
+                thumbnailSuffix = suffix(thumbnailTemplate, thumbnail);
+            }
+            return UrlTemplate.of(url, urlIdentifier);
+        }
+
+        private static String suffix(UrlTemplate template, String url) {
+            // Null and empty URLs are kept as they are
+            return (template != null) ? template.suffix(url) : url;
+        }
+
+        private String expand(UrlTemplate template, String suffix) {
+            return (template != null) ? template.expand(urlIdentifier, suffix) : suffix;
+        }
+
+        /**
+         * Convert the type returned by the server. Folders have no type.
+         *
+         * @param entryType type returned by the server
+         * @return the matching Type, null if unknown
+         */
+        static Type typeOf(String entryType) {
+            if (entryType == null || TextUtils.isEmpty(entryType)) {
+                return Type.DIRECTORY;
+            } else if (entryType.equals("FILE")) {
+                return Type.FILE;
+            } else if (entryType.equals("PICTURE")) {
+                return Type.IMAGE;
+            } else if (entryType.equals("VIDEO")) {
+                return Type.VIDEO;
+            } else if (entryType.equals("MUSIC")) {
+                return Type.MUSIC;
+            }
+            return null;
+        }
+
+        /**
+         * Convert a date returned by the server.
+         *
+         * @param date the date as returned by the server
+         * @return the Date, null if empty or invalid
+         */
+        static Date parseDate(String date) {
+            return Iso8601.parse(date);
+        }
+
+        static String humanReadableByteCount(long bytes, boolean si) {
             int unit = si ? 1000 : 1024;
             if (bytes < unit) return bytes + " B";
             int exp = (int) (Math.log(bytes) / Math.log(unit));
@@ -990,23 +2426,109 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             bytes = info.optLong("size");
             size = humanReadableByteCount(bytes, true);
 
-            downloadURL = info.optString("downloadUrl");
-            previewURL = info.optString("previewUrl");
-            thumbnailURL = info.optString("thumbUrl");
+            setDownloadURL(info.optString("downloadUrl"));
+            setPreviewURL(info.optString("previewUrl"));
+            setThumbnailURL(info.optString("thumbUrl"));
+            md5 = info.optString("md5");
 
             String date = info.optString("creationDate");
             if (date != "") {
-                try {
-                    creationDate = formatter.parse(date);
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
+                creationDate = parseDate(date);
             }
             metadata = new Metadata(info.optJSONObject("metadata"));
             extraInfoAvailable = true;
 
         }
 
+        /**
+         * Add extra information of another Entry of the same file, usually parsed from a file
+         * info request.
+         *
+         * @param info Entry holding the extra information
+         */
+        public void setExtraInfos(Entry info) {
+            bytes = info.bytes;
+            size = info.size;
+
+            setDownloadURL(info.getDownloadURL());
+            setPreviewURL(info.getPreviewURL());
+            setThumbnailURL(info.getThumbnailURL());
+            md5 = info.md5;
+
+            creationDate = info.creationDate;
+            metadata = info.metadata;
+            extraInfoAvailable = true;
+        }
+
+        /**
+         * Update this entry in place with the values of a newer Entry of the same file or
+         * folder. Values missing from {@code other}, null or empty, are kept.
+         *
+         * @param other        the newer Entry
+         * @param withContents true to also replace the contents of a folder
+         * @return true if a value has changed
+         */
+        boolean updateFrom(Entry other, boolean withContents) {
+            boolean changed = false;
+            if (!TextUtils.isEmpty(other.name) && !other.name.equals(name)) {
+                name = other.name;
+                changed = true;
+            }
+            if (!TextUtils.isEmpty(other.parentIdentifier) && !other.parentIdentifier.equals(parentIdentifier)) {
+                parentIdentifier = other.parentIdentifier;
+                changed = true;
+            }
+            if (other.type != null && other.type != type) {
+                type = other.type;
+                changed = true;
+            }
+            if (other.size != null && (other.bytes != bytes || size == null)) {
+                bytes = other.bytes;
+                size = other.size;
+                changed = true;
+            }
+            if (other.creationDate != null && !other.creationDate.equals(creationDate)) {
+                creationDate = other.creationDate;
+                changed = true;
+            }
+            if (!TextUtils.isEmpty(other.md5) && !other.md5.equals(md5)) {
+                md5 = other.md5;
+                changed = true;
+            }
+            String url = other.getDownloadURL();
+            if (!TextUtils.isEmpty(url) && !url.equals(getDownloadURL())) {
+                setDownloadURL(url);
+                changed = true;
+            }
+            url = other.getPreviewURL();
+            if (!TextUtils.isEmpty(url) && !url.equals(getPreviewURL())) {
+                setPreviewURL(url);
+                changed = true;
+            }
+            url = other.getThumbnailURL();
+            if (!TextUtils.isEmpty(url) && !url.equals(getThumbnailURL())) {
+                setThumbnailURL(url);
+                changed = true;
+            }
+            if (other.metadata != null && other.metadata != metadata) {
+                metadata = other.metadata;
+                changed = true;
+            }
+            if (other.extraInfoAvailable && !extraInfoAvailable) {
+                extraInfoAvailable = true;
+                changed = true;
+            }
+            if (stale && !other.stale) {
+                stale = false;
+                changed = true;
+            }
+            if (withContents && other.contents != null && other.contents != contents) {
+                contents = other.contents;
+                changed = true;
+            }
+            return changed;
+        }
+
         /**
          * List of available item types
          */
@@ -1033,12 +2555,13 @@ public final class OrangeCloudAPI<SESS_T extends Session> {
             this.width = jsonObject.optString("width");
             String date = jsonObject.optString("shootingDate");
             if (date != "") {
-                try {
-                    shootingDate = Entry.formatter.parse(date);
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
+                shootingDate = Entry.parseDate(date);
             }
         }
+
+        /**
+         * Empty constructor
+         */
+        public Metadata() {}
     }
 }
@@ -39,6 +39,25 @@ public final class OrangeListener {
         public abstract void onResponse(T response);
     }
 
+    /**
+     * Callback interface for the revalidation of a response served from a cache.
+     */
+    public interface Revalidation<T> {
+        /**
+         * Called when the server answered for a response already delivered from a cache.
+         * @param response the up to date response
+         * @param changed true if it differs from the cached response
+         */
+        public void onRevalidated(T response, boolean changed);
+
+        /**
+         * Called when the server could not be asked for a response already delivered from a
+         * cache. The cached response is kept.
+         * @param error the Orange Api Cloud error
+         */
+        public void onRevalidationFailed(OrangeAPIException error);
+    }
+
     /**
      * Callback interface for delivering error responses.
      */
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.graphics.Bitmap;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.exception.OrangeAPIException;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prefetch what a scrolling list of entries is about to show.
+ *
+ * The list reports its visible range and scroll velocity with {@link #onViewportChanged}. The
+ * images of the rows of the next screens, in the direction of the scroll, are downloaded into
+ * the entry image cache, and the listings of the visible folders are downloaded into the
+ * listing cache once the scroll slows down, as they are the likely next taps. Everything is
+ * requested at low priority, after the requests of the visible rows, and what falls out of
+ * the prefetched range is cancelled. Must be called from the main thread.
+ *
+ * Images are only prefetched with an {@link EntryImageCache} and listings with a
+ * {@link ListingCache}.
+ */
+public final class Prefetcher {
+
+    /**
+     * Default number of screens of images prefetched ahead of the visible rows.
+     */
+    public static final int DEFAULT_SCREENS_AHEAD = 2;
+
+    /**
+     * Default number of folder listings prefetched.
+     */
+    public static final int DEFAULT_MAX_LISTINGS = 4;
+
+    /** Above this speed, in screens per second, the rows pass by too fast to be prefetched. */
+    private static final float FLING_SCREENS_PER_SECOND = 6;
+
+    /** Below this speed, in screens per second, the user may tap a row. */
+    private static final float SETTLING_SCREENS_PER_SECOND = 1;
+
+    private final OrangeCloudAPI<?> api;
+    private final ImageTarget target;
+    private final String tagPrefix;
+    private JSONObject listingParameters;
+    private int screensAhead = DEFAULT_SCREENS_AHEAD;
+    private int maxListings = DEFAULT_MAX_LISTINGS;
+
+    /** Tags of the prefetches not finished yet. */
+    private final Set<String> pending = new LinkedHashSet<String>();
+
+    /**
+     * @param api    the API the entries come from
+     * @param target the target the images of the rows are requested for
+     */
+    public Prefetcher(OrangeCloudAPI<?> api, ImageTarget target) {
+        if (api == null || target == null) {
+            throw new IllegalArgumentException("api and target must not be null.");
+        }
+        this.api = api;
+        this.target = target;
+        tagPrefix = "Cloud/prefetch/" + Integer.toHexString(System.identityHashCode(this)) + "/";
+    }
+
+    /**
+     * @param parameters parameters the folders are listed with, as the listing cache is keyed
+     *                   by them
+     */
+    public void setListingParameters(JSONObject parameters) {
+        listingParameters = parameters;
+    }
+
+    /**
+     * @param screens number of screens of images prefetched ahead of the visible rows, at the
+     *                highest speed
+     */
+    public void setScreensAhead(int screens) {
+        screensAhead = Math.max(1, screens);
+    }
+
+    /**
+     * @param count number of folder listings prefetched, 0 to only prefetch images
+     */
+    public void setMaxListings(int count) {
+        maxListings = Math.max(0, count);
+    }
+
+    /**
+     * Update the prefetched range.
+     *
+     * @param entries      the entries of the list
+     * @param firstVisible position of the first visible row
+     * @param visibleCount number of visible rows
+     * @param velocity     scroll speed in rows per second, positive towards the end of the
+     *                     list, 0 when the list is idle
+     */
+    public void onViewportChanged(List<Entry> entries, int firstVisible, int visibleCount,
+                                  float velocity) {
+        int count = entries.size();
+        int screen = Math.max(1, visibleCount);
+        int lastVisible = Math.min(count, firstVisible + screen);
+        float speed = Math.abs(velocity) / screen;
+
+        Set<String> wanted = new HashSet<String>();
+        List<Entry> images = new ArrayList<Entry>();
+        List<Entry> folders = new ArrayList<Entry>();
+
+        if (speed <= FLING_SCREENS_PER_SECOND) {
+            // Further ahead the faster it scrolls, half a screen behind when slow
+            int ahead = Math.min(screensAhead * screen, Math.round(screen + Math.abs(velocity)));
+            int behind = (speed < SETTLING_SCREENS_PER_SECOND) ? screen / 2 : 0;
+            int start;
+            int end;
+            if (velocity < 0) {
+                start = firstVisible - ahead;
+                end = lastVisible + behind;
+            } else {
+                start = firstVisible - behind;
+                end = lastVisible + ahead;
+            }
+            start = Math.max(0, start);
+            end = Math.min(count, end);
+            for (int i = start; i < end; i++) {
+                // The visible rows are requested by the list itself
+                if (i >= firstVisible && i < lastVisible) {
+                    continue;
+                }
+                if (typeAt(entries, i) == Entry.Type.DIRECTORY) {
+                    continue;
+                }
+                Entry entry = entries.get(i);
+                String tag = tagPrefix + "image/" + entry.identifier;
+                if (wanted.add(tag)) {
+                    images.add(entry);
+                }
+            }
+        }
+
+        if (speed < SETTLING_SCREENS_PER_SECOND) {
+            for (int i = Math.max(0, firstVisible); i < lastVisible && folders.size() < maxListings; i++) {
+                if (typeAt(entries, i) == Entry.Type.DIRECTORY) {
+                    Entry folder = entries.get(i);
+                    wanted.add(tagPrefix + "list/" + folder.identifier);
+                    folders.add(folder);
+                }
+            }
+        }
+
+        // Drop what moved out of the range
+        for (String tag : new ArrayList<String>(pending)) {
+            if (!wanted.contains(tag)) {
+                pending.remove(tag);
+                api.cancelPrefetch(tag);
+            }
+        }
+
+        // Folders first, the row the user stops on is the most likely tap
+        for (Entry folder : folders) {
+            prefetchListing(folder);
+        }
+        for (Entry entry : images) {
+            prefetchImage(entry);
+        }
+    }
+
+    /**
+     * Cancel every prefetch, e.g. when the list is no longer displayed.
+     */
+    public void cancel() {
+        for (String tag : pending) {
+            api.cancelPrefetch(tag);
+        }
+        pending.clear();
+    }
+
+    private void prefetchImage(Entry entry) {
+        final String tag = tagPrefix + "image/" + entry.identifier;
+        if (pending.contains(tag)) {
+            return;
+        }
+        // Added first, as a cached image is delivered at once
+        pending.add(tag);
+        boolean requested = api.prefetchImage(entry, target, tag, new OrangeListener.Success<Bitmap>() {
+            @Override
+            public void onResponse(Bitmap response) {
+                pending.remove(tag);
+                // Kept by the cache, not displayed yet
+                api.releaseBitmap(response);
+            }
+        }, new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                pending.remove(tag);
+            }
+        });
+        if (!requested) {
+            pending.remove(tag);
+        }
+    }
+
+    private void prefetchListing(Entry folder) {
+        final String tag = tagPrefix + "list/" + folder.identifier;
+        if (pending.contains(tag)) {
+            return;
+        }
+        pending.add(tag);
+        boolean requested = api.prefetchListing(folder, listingParameters, tag,
+                new OrangeListener.Success<Entry>() {
+                    @Override
+                    public void onResponse(Entry response) {
+                        pending.remove(tag);
+                    }
+                }, new OrangeListener.Error() {
+                    @Override
+                    public void onErrorResponse(OrangeAPIException error) {
+                        pending.remove(tag);
+                    }
+                });
+        if (!requested) {
+            pending.remove(tag);
+        }
+    }
+
+    /**
+     * Type of a row, without creating the Entry of a lazy listing.
+     */
+    private static Entry.Type typeAt(List<Entry> entries, int index) {
+        if (entries instanceof LazyEntryList) {
+            return ((LazyEntryList) entries).getType(index);
+        }
+        return entries.get(index).type;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Body of an HTTP response, kept in memory while it is small and spilled to a temporary file
+ * as soon as it grows over a given size. The heap used by a response is therefore never more
+ * than {@code maxInMemory} bytes, whatever the size of the body.
+ */
+final class ResponseBuffer {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private byte[] memory;
+    private int memoryLength;
+    private File file;
+    private long length;
+
+    private ResponseBuffer() {
+    }
+
+    /**
+     * Read a whole response body.
+     *
+     * @param input         the body stream, closed by this method
+     * @param contentLength the announced length of the body, -1 if unknown
+     * @param maxInMemory   size over which the body is written to disk
+     * @param directory     directory of the temporary file
+     * @return the buffered body, to be released after use
+     */
+    static ResponseBuffer read(InputStream input, long contentLength, int maxInMemory, File directory)
+            throws IOException {
+        ResponseBuffer buffer = new ResponseBuffer();
+        OutputStream spill = null;
+        try {
+            if (contentLength > maxInMemory) {
+                spill = buffer.spill(directory);
+            } else {
+                buffer.memory = new byte[contentLength > 0 ? (int) contentLength : CHUNK_SIZE];
+            }
+
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int bytesRead;
+            while ((bytesRead = input.read(chunk)) != -1) {
+                if (spill == null && buffer.memoryLength + bytesRead > maxInMemory) {
+                    spill = buffer.spill(directory);
+                }
+                if (spill != null) {
+                    spill.write(chunk, 0, bytesRead);
+                } else {
+                    buffer.append(chunk, bytesRead, maxInMemory);
+                }
+                buffer.length += bytesRead;
+            }
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        } finally {
+            input.close();
+            if (spill != null) {
+                spill.close();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the size of the body in bytes
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * @return true if the body has been written to disk
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return a new stream on the body
+     */
+    InputStream open() throws IOException {
+        if (file != null) {
+            return new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+        }
+        return new ByteArrayInputStream(memory, 0, memoryLength);
+    }
+
+    /**
+     * Free the memory and delete the temporary file.
+     */
+    void release() {
+        memory = null;
+        memoryLength = 0;
+        if (file != null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    private void append(byte[] chunk, int count, int maxInMemory) {
+        if (memoryLength + count > memory.length) {
+            int capacity = Math.min(Math.max(memory.length * 2, memoryLength + count), maxInMemory);
+            byte[] grown = new byte[capacity];
+            System.arraycopy(memory, 0, grown, 0, memoryLength);
+            memory = grown;
+        }
+        System.arraycopy(chunk, 0, memory, memoryLength, count);
+        memoryLength += count;
+    }
+
+    private OutputStream spill(File directory) throws IOException {
+        file = File.createTempFile("response", ".json", directory);
+        OutputStream output = new FileOutputStream(file);
+        if (memoryLength > 0) {
+            output.write(memory, 0, memoryLength);
+        }
+        memory = null;
+        memoryLength = 0;
+        return output;
+    }
+}
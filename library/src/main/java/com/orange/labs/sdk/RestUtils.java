@@ -26,18 +26,28 @@ package com.orange.labs.sdk;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.WindowManager;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.TimeoutError;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.ImageRequest;
 import com.android.volley.toolbox.JsonObjectRequest;
+import com.android.volley.toolbox.JsonRequest;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
@@ -52,6 +62,7 @@ import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -64,10 +75,21 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -76,18 +98,58 @@ import javax.net.ssl.HttpsURLConnection;
 public class RestUtils {
 
     private static int TIMEOUT = 5000;
-    private static String TAG = RestUtils.class.toString();
+
+    /**
+     * Default size over which a streamed response is written to disk instead of memory.
+     */
+    public static final int DEFAULT_MAX_IN_MEMORY_RESPONSE = 256 * 1024;
 
     private RequestQueue mRequestQueue;
     private ImageLoader.ImageCache mImageCache;
+    private volatile BitmapPool mBitmapPool;
+    private volatile ConnectivityMonitor mConnectivity;
+    private MemoryGovernor mMemoryGovernor;
     private int maxWidth;
     private int maxHeight;
     private Context mContext;
 
+    private ExecutorService mStreamExecutor;
+    /** Runs the low priority requests, one at a time on a background priority thread. */
+    private ExecutorService mPrefetchExecutor;
+    /** Background tasks not finished yet, by tag. */
+    private final Map<String, List<Future<?>>> mTasks = new HashMap<String, List<Future<?>>>();
+    private Handler mMainHandler;
+    private volatile int mMaxInMemoryResponse = DEFAULT_MAX_IN_MEMORY_RESPONSE;
+
+    /**
+     * Parse a response body read as a stream.
+     */
+    public interface StreamParser<T> {
+        /**
+         * @param input the response body. The stream is closed by the caller.
+         * @return the parsed response
+         */
+        T parse(InputStream input) throws IOException, JSONException;
+    }
+
     public RestUtils(Context context) {
         // Create Volley Request Queue thanks to context
         mRequestQueue = Volley.newRequestQueue(context);
         mContext = context;
+        mStreamExecutor = Executors.newFixedThreadPool(2);
+        mPrefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "OrangeCloud-prefetch");
+            }
+        });
+        mMainHandler = new Handler(Looper.getMainLooper());
 
         // Fix maxWidth & maxHeight of screen
         DisplayMetrics metrics = new DisplayMetrics();
@@ -102,6 +164,352 @@ public class RestUtils {
         mImageCache = cache;
     }
 
+    /**
+     * Set a pool the images are decoded into, and whose bitmaps are counted when delivered.
+     *
+     * @param pool the pool, null to allocate a new bitmap for each image
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+    }
+
+    /**
+     * @return the pool the images are decoded into, null if none
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * @return the monitor of the network connection, registered on the first call
+     */
+    synchronized ConnectivityMonitor getConnectivityMonitor() {
+        if (mConnectivity == null) {
+            mConnectivity = new ConnectivityMonitor(mContext);
+        }
+        return mConnectivity;
+    }
+
+    /**
+     * @return the governor of the in-memory caches, registered on the first call
+     */
+    synchronized MemoryGovernor getMemoryGovernor() {
+        if (mMemoryGovernor == null) {
+            mMemoryGovernor = new MemoryGovernor(mContext);
+        }
+        return mMemoryGovernor;
+    }
+
+    /**
+     * Decode again, on a background priority thread, the images an image cache held in memory
+     * when the application was last left, so that they are displayed at once after a start up.
+     *
+     * @param cache     the image cache
+     * @param maxImages maximum number of images decoded, the most recently used first
+     */
+    void warmImages(final EntryImageCache cache, final int maxImages) {
+        mPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                for (final String memoryKey : cache.readHotKeys()) {
+                    if (count >= maxImages) {
+                        break;
+                    }
+                    ImageTarget target = ImageTarget.fromMemoryKey(memoryKey);
+                    byte[] data = (target != null)
+                            ? cache.getEncoded(memoryKey.substring(0, memoryKey.lastIndexOf('@')))
+                            : null;
+                    if (data == null) {
+                        continue;
+                    }
+                    final Bitmap bitmap = ImageTarget.decode(data, targetWidth(target),
+                            targetHeight(target), target.getConfig(), mBitmapPool);
+                    if (bitmap == null) {
+                        continue;
+                    }
+                    count++;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Requested meanwhile, keep the one already delivered
+                            if (cache.getBitmap(memoryKey) == null) {
+                                cache.putBitmap(memoryKey, bitmap);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the requests of a tag. Callbacks of a cancelled request are not called.
+     *
+     * @param tag request tag
+     */
+    public void cancel(String tag) {
+        mRequestQueue.cancelAll(tag);
+        List<Future<?>> tasks;
+        synchronized (mTasks) {
+            tasks = mTasks.remove(tag);
+        }
+        if (tasks != null) {
+            for (Future<?> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Run a background task on the executor of its priority: low priority tasks wait for each
+     * other on a background priority thread. Tasks are kept by tag until they are done, so
+     * that {@link #cancel(String)} can drop them.
+     *
+     * @return the task, checked on the main thread before delivering its result
+     */
+    private Future<?> execute(final String tag, Request.Priority priority, Runnable runnable) {
+        FutureTask<Void> task = new FutureTask<Void>(runnable, null) {
+            @Override
+            protected void done() {
+                synchronized (mTasks) {
+                    List<Future<?>> tasks = mTasks.get(tag);
+                    if (tasks != null && tasks.remove(this) && tasks.isEmpty()) {
+                        mTasks.remove(tag);
+                    }
+                }
+                rethrow(this);
+            }
+        };
+        synchronized (mTasks) {
+            List<Future<?>> tasks = mTasks.get(tag);
+            if (tasks == null) {
+                tasks = new ArrayList<Future<?>>(1);
+                mTasks.put(tag, tasks);
+            }
+            tasks.add(task);
+        }
+        if (priority == Request.Priority.LOW) {
+            mPrefetchExecutor.execute(task);
+        } else {
+            mStreamExecutor.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Throw on the main thread the unexpected exception of a finished task, which the
+     * FutureTask would otherwise keep silently.
+     */
+    private void rethrow(Future<?> task) {
+        if (task.isCancelled()) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            });
+        }
+    }
+
+    private static boolean isCancelled(Future<?> task) {
+        return task != null && task.isCancelled();
+    }
+
+    /**
+     * Fail an image request without network, only the cached images are available offline.
+     *
+     * @return true if the request has been failed
+     */
+    private boolean failOffline(OrangeListener.Error failure) {
+        ConnectivityMonitor connectivity = mConnectivity;
+        if (connectivity != null && !connectivity.isOnline()) {
+            failure.onErrorResponse(new CloudAPIException(0, "offline", "No network connection", ""));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the size over which a streamed response is spilled to a temporary file. It is also
+     * the maximum heap used to hold the body of such a response.
+     *
+     * @param bytes the size in bytes
+     */
+    public void setMaxInMemoryResponseSize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("bytes must be positive.");
+        }
+        mMaxInMemoryResponse = bytes;
+    }
+
+    /**
+     * GET request whose body is parsed as a stream on a background thread. Bodies bigger
+     * than {@link #setMaxInMemoryResponseSize(int)} are written to disk before being parsed,
+     * so even huge responses only use a bounded amount of heap.
+     *
+     * @param tag     request tag
+     * @param url     request url
+     * @param headers request headers
+     * @param parser  parser of the body
+     * @param success called on the main thread with the parsed response
+     * @param failure called on the main thread when an error occurred
+     */
+    public <T> void streamRequest(final String tag,
+                                  final String url,
+                                  final Map<String, String> headers,
+                                  final StreamParser<T> parser,
+                                  final Response.Listener<T> success,
+                                  final OrangeListener.Error failure) {
+        streamRequest(tag, url, headers, parser, Request.Priority.NORMAL, success, failure);
+    }
+
+    /**
+     * Variant of {@link #streamRequest(String, String, Map, StreamParser, Response.Listener,
+     * OrangeListener.Error)} with a priority. Low priority requests wait for each other on a
+     * background priority thread. Requests of any priority can be cancelled with
+     * {@link #cancel(String)}.
+     */
+    public <T> void streamRequest(final String tag,
+                                  final String url,
+                                  final Map<String, String> headers,
+                                  final StreamParser<T> parser,
+                                  final Request.Priority priority,
+                                  final Response.Listener<T> success,
+                                  final OrangeListener.Error failure) {
+        final Future<?>[] task = new Future<?>[1];
+        task[0] = execute(tag, priority, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final T result = executeStream(url, headers, parser);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isCancelled(task[0])) {
+                                success.onResponse(result);
+                            }
+                        }
+                    });
+                } catch (final OrangeAPIException e) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isCancelled(task[0])) {
+                                failure.onErrorResponse(e);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Synchronus variant of {@link #streamRequest(String, String, Map, StreamParser,
+     * Response.Listener, OrangeListener.Error)}.
+     */
+    public <T> T streamRequestSynchronus(final String url,
+                                         final Map<String, String> headers,
+                                         final StreamParser<T> parser) throws SynchronusException {
+        try {
+            return executeStream(url, headers, parser);
+        } catch (OrangeAPIException e) {
+            throw new SynchronusException(e);
+        }
+    }
+
+    /**
+     * Execute a stream request, retrying timeouts with the retry policy of the Volley requests.
+     */
+    private <T> T executeStream(String url,
+                                Map<String, String> headers,
+                                StreamParser<T> parser) throws OrangeAPIException {
+        DefaultRetryPolicy retryPolicy = new DefaultRetryPolicy(
+                TIMEOUT,
+                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+        while (true) {
+            try {
+                return executeStream(url, headers, parser, retryPolicy.getCurrentTimeout());
+            } catch (SocketTimeoutException e) {
+                e.printStackTrace();
+                try {
+                    retryPolicy.retry(new TimeoutError());
+                } catch (VolleyError error) {
+                    throw new CloudAPIException(error);
+                }
+            }
+        }
+    }
+
+    private <T> T executeStream(String url,
+                                Map<String, String> headers,
+                                StreamParser<T> parser,
+                                int timeout) throws OrangeAPIException, SocketTimeoutException {
+        HttpURLConnection conn = null;
+        ResponseBuffer body = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
+            conn.setUseCaches(false);
+            for (String key : headers.keySet()) {
+                conn.setRequestProperty(key, headers.get(key));
+            }
+
+            int serverResponseCode = conn.getResponseCode();
+            if (serverResponseCode < 200 || serverResponseCode >= 300) {
+                InputStream errorStream = conn.getErrorStream();
+                String response = errorStream != null ? IOUtils.toString(errorStream, "UTF-8") : "";
+                try {
+                    throw new CloudAPIException(serverResponseCode, new JSONObject(response));
+                } catch (JSONException e) {
+                    throw new CloudAPIException(serverResponseCode, "", response, "");
+                }
+            }
+
+            body = ResponseBuffer.read(conn.getInputStream(), conn.getContentLength(),
+                    mMaxInMemoryResponse, mContext.getCacheDir());
+            InputStream input = body.open();
+            try {
+                return parser.parse(input);
+            } catch (RuntimeException e) {
+                // E.g. IllegalStateException of the reader when the body is not the expected JSON
+                e.printStackTrace();
+                throw new CloudAPIException(new ParseError(e));
+            } finally {
+                input.close();
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            throw new CloudAPIException(new ParseError(e));
+        } catch (SocketTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CloudAPIException(new NoConnectionError(e));
+        } finally {
+            if (body != null) {
+                body.release();
+            }
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
     public void jsonRequest(final String tag,
                             final int method,
                             final String url,
@@ -109,7 +517,6 @@ public class RestUtils {
                             final Map<String, String> headers,
                             final Response.Listener<JSONObject> success,
                             final OrangeListener.Error failure) {
-        Log.v(TAG, "jsonRequest: " + url);
         JsonObjectRequest jsonObjReq = new JsonObjectRequest(method, url, params, success,
                 new Response.ErrorListener() {
                     @Override
@@ -132,6 +539,63 @@ public class RestUtils {
         mRequestQueue.add(jsonObjReq);
     }
 
+    /**
+     * Request whose JSON body is parsed as a stream directly from the bytes received by
+     * Volley, on its network thread, without creating a String nor a JSONObject.
+     *
+     * @param tag     request tag
+     * @param method  HTTP method
+     * @param url     request url
+     * @param params  JSON body, can be null
+     * @param headers request headers
+     * @param parser  parser of the body
+     * @param success called with the parsed response
+     * @param failure called when an error occurred
+     */
+    public <T> void parsedRequest(final String tag,
+                                  final int method,
+                                  final String url,
+                                  final JSONObject params,
+                                  final Map<String, String> headers,
+                                  final StreamParser<T> parser,
+                                  final Response.Listener<T> success,
+                                  final OrangeListener.Error failure) {
+        JsonRequest<T> request = new JsonRequest<T>(method, url,
+                (params == null) ? null : params.toString(), success,
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        failure.onErrorResponse(new CloudAPIException(error));
+                    }
+                }) {
+
+            @Override
+            protected Response<T> parseNetworkResponse(NetworkResponse response) {
+                try {
+                    T result = parser.parse(new ByteArrayInputStream(response.data));
+                    return Response.success(result, HttpHeaderParser.parseCacheHeaders(response));
+                } catch (IOException e) {
+                    return Response.error(new ParseError(e));
+                } catch (JSONException e) {
+                    return Response.error(new ParseError(e));
+                } catch (RuntimeException e) {
+                    return Response.error(new ParseError(e));
+                }
+            }
+
+            @Override
+            public Map<String, String> getHeaders() throws AuthFailureError {
+                return headers;
+            }
+        };
+        request.setRetryPolicy(new DefaultRetryPolicy(
+                TIMEOUT,
+                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+
+        request.setTag(tag);
+        mRequestQueue.add(request);
+    }
 
     public void stringRequest(final String tag,
                               final int method,
@@ -140,7 +604,6 @@ public class RestUtils {
                               final Map<String, String> headers,
                               final Response.Listener<String> success,
                               final OrangeListener.Error failure) {
-        Log.v(TAG, "stringRequest: " + url);
         StringRequest stringReq = new StringRequest(method, url, success,
                 new Response.ErrorListener() {
                     @Override
@@ -172,26 +635,54 @@ public class RestUtils {
                              final OrangeListener.Success<Bitmap> success,
                              final OrangeListener.Error failure,
                              final boolean useCache) {
+        imageRequest(tag, url, headers, ImageTarget.SCREEN, success, failure, useCache);
+    }
 
+    /**
+     * Download an image, decoded for a target size and configuration.
+     *
+     * @param tag      tag of the request, also the key of the image cache
+     * @param url      URL of the image
+     * @param headers  headers of the request
+     * @param target   size and configuration of the bitmap
+     * @param success  callback returning the Bitmap
+     * @param failure  callback when error occurred
+     * @param useCache true to use the image cache
+     */
+    public void imageRequest(final String tag,
+                             final String url,
+                             final Map<String, String> headers,
+                             final ImageTarget target,
+                             final OrangeListener.Success<Bitmap> success,
+                             final OrangeListener.Error failure,
+                             final boolean useCache) {
 
+        final String cacheKey = (target == ImageTarget.SCREEN) ? tag : tag + target.cacheSuffix();
         if (useCache && mImageCache != null) {
-            Bitmap image = mImageCache.getBitmap(tag);
+            Bitmap image = mImageCache.getBitmap(cacheKey);
             if (image != null) {
-                success.onResponse(image);
+                deliverImage(success, image);
                 return;
             }
         }
-        Log.v(TAG, "imageRequest: " + url);
+        if (failOffline(failure)) {
+            return;
+        }
         ImageRequest request = new ImageRequest(url,
                 new Response.Listener<Bitmap>() {
                     @Override
                     public void onResponse(Bitmap bitmap) {
                         if (useCache && mImageCache != null) {
-                            mImageCache.putBitmap(tag, bitmap);
+                            BitmapPool pool = mBitmapPool;
+                            if (pool != null) {
+                                // Evictions of this cache are not known: its bitmaps are never reused
+                                pool.acquire(bitmap);
+                            }
+                            mImageCache.putBitmap(cacheKey, bitmap);
                         }
-                        success.onResponse(bitmap);
+                        deliverImage(success, bitmap);
                     }
-                }, maxWidth, maxHeight, null,
+                }, targetWidth(target), targetHeight(target), target.getConfig(),
                 new Response.ErrorListener() {
                     public void onErrorResponse(VolleyError error) {
                         failure.onErrorResponse(new CloudAPIException(error));
@@ -201,6 +692,13 @@ public class RestUtils {
             public Map<String, String> getHeaders() throws AuthFailureError {
                 return headers;
             }
+
+            @Override
+            protected Response<Bitmap> parseNetworkResponse(NetworkResponse response) {
+                BitmapPool pool = mBitmapPool;
+                return (pool != null) ? decodeImage(response, target, pool)
+                        : super.parseNetworkResponse(response);
+            }
         };
         // Adding request to request queue
         request.setRetryPolicy(new DefaultRetryPolicy(
@@ -211,6 +709,167 @@ public class RestUtils {
         mRequestQueue.add(request);
     }
 
+    /**
+     * Download an image through an {@link EntryImageCache}: from memory, else from disk, else
+     * from the network, in which case the encoded image is written to disk.
+     *
+     * @param tag     tag of the network request
+     * @param url     URL of the image
+     * @param headers headers of the network request
+     * @param cache   the image cache
+     * @param key     key of the image in the cache
+     * @param target  size and configuration of the bitmap
+     * @param success callback returning the Bitmap, on the main thread
+     * @param failure callback when error occurred
+     */
+    public void imageRequest(final String tag,
+                             final String url,
+                             final Map<String, String> headers,
+                             final EntryImageCache cache,
+                             final String key,
+                             final ImageTarget target,
+                             final OrangeListener.Success<Bitmap> success,
+                             final OrangeListener.Error failure) {
+        imageRequest(tag, url, headers, cache, key, target, Request.Priority.NORMAL, success, failure);
+    }
+
+    /**
+     * Variant of {@link #imageRequest(String, String, Map, EntryImageCache, String, ImageTarget,
+     * OrangeListener.Success, OrangeListener.Error)} with a priority. Low priority images are
+     * read from disk on a background priority thread, downloaded after the other requests of
+     * the queue, and can be cancelled with {@link #cancel(String)}.
+     */
+    public void imageRequest(final String tag,
+                             final String url,
+                             final Map<String, String> headers,
+                             final EntryImageCache cache,
+                             final String key,
+                             final ImageTarget target,
+                             final Request.Priority priority,
+                             final OrangeListener.Success<Bitmap> success,
+                             final OrangeListener.Error failure) {
+
+        // Decoded images depend on the target, encoded ones do not
+        final String memoryKey = key + target.cacheSuffix();
+        Bitmap image = cache.getBitmap(memoryKey);
+        if (image != null) {
+            deliverImage(success, image);
+            return;
+        }
+
+        final Future<?>[] task = new Future<?>[1];
+        task[0] = execute(tag, priority, new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = cache.getEncoded(key);
+                final Bitmap bitmap = (data != null) ? ImageTarget.decode(data, targetWidth(target),
+                        targetHeight(target), target.getConfig(), mBitmapPool) : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (bitmap != null) {
+                            cache.putBitmap(memoryKey, bitmap);
+                            if (!isCancelled(task[0])) {
+                                deliverImage(success, bitmap);
+                            }
+                        } else if (!isCancelled(task[0])) {
+                            networkImageRequest(tag, url, headers, cache, key, memoryKey, target,
+                                    priority, success, failure);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void networkImageRequest(final String tag,
+                                     final String url,
+                                     final Map<String, String> headers,
+                                     final EntryImageCache cache,
+                                     final String key,
+                                     final String memoryKey,
+                                     final ImageTarget target,
+                                     final Request.Priority priority,
+                                     final OrangeListener.Success<Bitmap> success,
+                                     final OrangeListener.Error failure) {
+        if (failOffline(failure)) {
+            return;
+        }
+        ImageRequest request = new ImageRequest(url,
+                new Response.Listener<Bitmap>() {
+                    @Override
+                    public void onResponse(Bitmap bitmap) {
+                        cache.putBitmap(memoryKey, bitmap);
+                        deliverImage(success, bitmap);
+                    }
+                }, targetWidth(target), targetHeight(target), target.getConfig(),
+                new Response.ErrorListener() {
+                    public void onErrorResponse(VolleyError error) {
+                        failure.onErrorResponse(new CloudAPIException(error));
+                    }
+                }) {
+            @Override
+            public Map<String, String> getHeaders() throws AuthFailureError {
+                return headers;
+            }
+
+            @Override
+            public Priority getPriority() {
+                return priority;
+            }
+
+            @Override
+            protected Response<Bitmap> parseNetworkResponse(NetworkResponse response) {
+                BitmapPool pool = mBitmapPool;
+                Response<Bitmap> parsed = (pool != null) ? decodeImage(response, target, pool)
+                        : super.parseNetworkResponse(response);
+                // Keep the encoded image, on the network thread
+                if (parsed.isSuccess()) {
+                    cache.putEncoded(key, response.data);
+                }
+                return parsed;
+            }
+        };
+        request.setRetryPolicy(new DefaultRetryPolicy(
+                TIMEOUT,
+                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        request.setTag(tag);
+        mRequestQueue.add(request);
+    }
+
+    /**
+     * Decode a downloaded image into a pooled bitmap, on the network thread.
+     */
+    private Response<Bitmap> decodeImage(NetworkResponse response, ImageTarget target,
+                                         BitmapPool pool) {
+        Bitmap bitmap = ImageTarget.decode(response.data, targetWidth(target),
+                targetHeight(target), target.getConfig(), pool);
+        if (bitmap == null) {
+            return Response.error(new ParseError(response));
+        }
+        return Response.success(bitmap, HttpHeaderParser.parseCacheHeaders(response));
+    }
+
+    /**
+     * Count the delivered bitmap as referenced by the caller until it releases it.
+     */
+    private void deliverImage(OrangeListener.Success<Bitmap> success, Bitmap bitmap) {
+        BitmapPool pool = mBitmapPool;
+        if (pool != null) {
+            pool.acquire(bitmap);
+        }
+        success.onResponse(bitmap);
+    }
+
+    private int targetWidth(ImageTarget target) {
+        return (target.getWidth() > 0) ? target.getWidth() : maxWidth;
+    }
+
+    private int targetHeight(ImageTarget target) {
+        return (target.getHeight() > 0) ? target.getHeight() : maxHeight;
+    }
+
     public void uploadRequest(final URL url,
                               final Uri fileUri,
                               final Map<String, String> headers,
@@ -220,7 +879,6 @@ public class RestUtils {
 
 
         try {
-            Log.v(TAG, "uploadRequest: " + url);
             FileInputStream fileInputStream = (FileInputStream) mContext.getContentResolver().openInputStream(fileUri);
 
             // Open a HTTP connection to the URL
@@ -325,7 +983,7 @@ public class RestUtils {
         }
     }
 
-    public void uploadRequestSynchronus(URL url, final Uri fileUri, final Map<String, String> headers) throws OrangeCloudOperationException, OrangeAPIException {
+    public JSONObject uploadRequestSynchronus(URL url, final Uri fileUri, final Map<String, String> headers) throws OrangeCloudOperationException, OrangeAPIException {
         try {
             FileInputStream fileInputStream = (FileInputStream) mContext.getContentResolver().openInputStream(fileUri);
             int mSizeFile = (int) fileInputStream.getChannel().size();
@@ -369,6 +1027,7 @@ public class RestUtils {
                     response += line;
                 }
                 rd.close();
+                return new JSONObject(response);
             } else {
                 BufferedReader rd = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
                 String response = "";
@@ -389,6 +1048,9 @@ public class RestUtils {
         } catch (ProtocolException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
         } catch (IOException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
@@ -442,7 +1104,7 @@ public class RestUtils {
     }
 
 
-    public void uploadRequestStreamSynchronus(URL url, InputStream inputStream, final Map<String, String> headers) throws OrangeCloudOperationException, OrangeAPIException {
+    public JSONObject uploadRequestStreamSynchronus(URL url, InputStream inputStream, final Map<String, String> headers) throws OrangeCloudOperationException, OrangeAPIException {
         try {
             // Open a HTTP connection to the URL
             HttpURLConnection conn = (HttpsURLConnection) url.openConnection();
@@ -484,6 +1146,7 @@ public class RestUtils {
                     response += line;
                 }
                 rd.close();
+                return new JSONObject(response);
             } else {
                 BufferedReader rd = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
                 String response = "";
@@ -504,6 +1167,9 @@ public class RestUtils {
         } catch (ProtocolException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
         } catch (IOException e) {
             e.printStackTrace();
             throw new OrangeCloudOperationException(e);
@@ -549,4 +1215,108 @@ public class RestUtils {
             throw new OrangeCloudOperationException(e);
         }
     }
+
+    /**
+     * Open the content behind an Uri.
+     *
+     * @param fileUri Uri of the local file
+     * @return a stream on the content, to be closed by the caller
+     */
+    public InputStream openInputStream(final Uri fileUri) throws OrangeCloudOperationException {
+        try {
+            InputStream inputStream = mContext.getContentResolver().openInputStream(fileUri);
+            if (inputStream == null) {
+                throw new FileNotFoundException(String.valueOf(fileUri));
+            }
+            return inputStream;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        }
+    }
+
+    /**
+     * Size, in bytes, of the content behind an Uri.
+     *
+     * @param fileUri Uri of the local file
+     * @return the size of the file
+     */
+    public long contentLength(final Uri fileUri) throws OrangeCloudOperationException {
+        try {
+            FileInputStream fileInputStream = (FileInputStream) mContext.getContentResolver().openInputStream(fileUri);
+            long size = fileInputStream.getChannel().size();
+            fileInputStream.close();
+            return size;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        }
+    }
+
+    /**
+     * Copy a stream to a temporary file of the cache directory, e.g. to read its content
+     * twice. The stream is closed.
+     *
+     * @param inputStream the stream to copy
+     * @return the temporary file, to be deleted by the caller
+     */
+    public File spool(final InputStream inputStream) throws OrangeCloudOperationException {
+        File file = null;
+        try {
+            file = File.createTempFile("upload", null, mContext.getCacheDir());
+            OutputStream outputStream = new FileOutputStream(file);
+            try {
+                byte buf[] = new byte[8192];
+                int bytesRead;
+                while ((bytesRead = inputStream.read(buf)) != -1) {
+                    outputStream.write(buf, 0, bytesRead);
+                }
+            } finally {
+                outputStream.close();
+                inputStream.close();
+            }
+            return file;
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (file != null) {
+                file.delete();
+            }
+            throw new OrangeCloudOperationException(e);
+        }
+    }
+
+    /**
+     * MD5 digest of the content behind an Uri, as a lower case hexadecimal string.
+     *
+     * @param fileUri Uri of the local file
+     * @return the hexadecimal MD5 of the file
+     */
+    public String md5(final Uri fileUri) throws OrangeCloudOperationException {
+        try {
+            InputStream inputStream = new BufferedInputStream(mContext.getContentResolver().openInputStream(fileUri));
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte buf[] = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buf)) != -1) {
+                digest.update(buf, 0, bytesRead);
+            }
+            inputStream.close();
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new OrangeCloudOperationException(e);
+        }
+    }
 }
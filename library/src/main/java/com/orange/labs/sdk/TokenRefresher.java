@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.exception.OrangeAPIException;
+import com.orange.labs.sdk.session.Session;
+
+/**
+ * Decide whether a request rejected with a 401 is replayed after a refresh of the access token.
+ *
+ * A request sent with a token that has been replaced since is replayed without refreshing
+ * again, and a token refreshed less than {@link #MIN_TOKEN_AGE} ago is not refreshed when the
+ * server rejects it, so that a request is replayed at most once per refresh. Concurrent
+ * refreshes are coalesced by {@link Session#refresh}: requests rejected while a refresh is in
+ * flight wait for its result.
+ */
+final class TokenRefresher {
+
+    /**
+     * Time during which a newly refreshed token is trusted, in milliseconds.
+     */
+    static final long MIN_TOKEN_AGE = 30 * 1000;
+
+    private final Session session;
+
+    /** Authorization header of the last refreshed token. */
+    private String refreshedAuthorization;
+    private long refreshTime;
+
+    /**
+     * @param session the session whose token is refreshed
+     */
+    TokenRefresher(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * @return the Authorization header of the current access token
+     */
+    String authorization() {
+        return "Bearer " + session.getAccessToken();
+    }
+
+    /**
+     * Handle a request rejected with a 401.
+     *
+     * @param authorization the Authorization header the request was sent with
+     * @param error         the error of the request
+     * @param replay        callback sending the request again with the current token
+     * @param failure       callback of the request, called if it must not be replayed
+     */
+    void unauthorized(String authorization,
+                      OrangeAPIException error,
+                      final OrangeListener.Success<String> replay,
+                      final OrangeListener.Error failure) {
+        boolean replayNow = false;
+        boolean fail = false;
+        synchronized (this) {
+            String current = authorization();
+            if (authorization != null && !authorization.equals(current)) {
+                // The token changed since the request was sent
+                replayNow = true;
+            } else if (current.equals(refreshedAuthorization)
+                    && System.currentTimeMillis() - refreshTime < MIN_TOKEN_AGE) {
+                // The token was just refreshed and is still rejected
+                fail = true;
+            }
+        }
+        if (replayNow) {
+            replay.onResponse(null);
+            return;
+        }
+        if (fail) {
+            failure.onErrorResponse(error);
+            return;
+        }
+
+        session.refresh(new OrangeListener.Success<String>() {
+            @Override
+            public void onResponse(String response) {
+                synchronized (TokenRefresher.this) {
+                    refreshedAuthorization = authorization();
+                    refreshTime = System.currentTimeMillis();
+                }
+                replay.onResponse(null);
+            }
+        }, failure);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.exception.OrangeCloudOperationException;
+import com.orange.labs.sdk.exception.SynchronusException;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skip-if-identical check used by the synchronus uploads.
+ *
+ * The listing of each target folder is kept for a few minutes so that an upload loop
+ * (camera backup, restore after a reinstall...) only lists a folder once. The listing of a
+ * folder is dropped as soon as the API modifies it, see {@link #invalidate(String)}.
+ */
+final class UploadDeduplicator {
+
+    /**
+     * How long a folder listing is trusted before being fetched again.
+     */
+    private static final long LISTING_TTL = 5 * 60 * 1000;
+
+    private final OrangeCloudAPI<?> api;
+    private final Map<String, Listing> listings = new HashMap<String, Listing>();
+    /** Identifier of the root folder, whose listing is kept under the "" key. */
+    private String rootIdentifier;
+    private volatile boolean enabled;
+
+    UploadDeduplicator(OrangeCloudAPI<?> api) {
+        this.api = api;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (listings) {
+                listings.clear();
+            }
+        }
+    }
+
+    /**
+     * Forget the listing of a folder modified by a request other than a synchronus upload.
+     *
+     * @param folderIdentifier identifier of the folder, "" for the root
+     */
+    void invalidate(String folderIdentifier) {
+        if (folderIdentifier == null) {
+            return;
+        }
+        synchronized (listings) {
+            listings.remove(folderIdentifier);
+            if (folderIdentifier.equals(rootIdentifier)) {
+                listings.remove(key(null));
+            }
+        }
+    }
+
+    /**
+     * Look for a file identical to the one about to be uploaded.
+     *
+     * @param parentId unique identifier of the parent folder, null for the root folder
+     * @param filename name of file to upload
+     * @param length   size of the content in bytes
+     * @param fileUri  Uri of the content, used to compare MD5 when the server provides one.
+     *                 Can be null, files with an MD5 are then never identical.
+     * @return the identical Entry or null if the content has to be uploaded
+     */
+    Entry findIdentical(String parentId, String filename, long length, Uri fileUri)
+            throws OrangeCloudOperationException {
+        String localMd5 = null;
+        for (Entry candidate : sameSize(parentId, filename, length)) {
+            if (!TextUtils.isEmpty(candidate.md5)) {
+                if (fileUri == null) {
+                    continue;
+                }
+                if (localMd5 == null) {
+                    localMd5 = api.getSession().getRestClient().md5(fileUri);
+                }
+                if (!candidate.md5.equalsIgnoreCase(localMd5)) {
+                    continue;
+                }
+            }
+            return candidate;
+        }
+        return null;
+    }
+
+    /**
+     * @param parentId unique identifier of the parent folder, null for the root folder
+     * @param filename name of file to upload
+     * @param length   size of the content in bytes
+     * @return true if the folder has a file with the same name and size, whose MD5 is known
+     * and has to be compared with the content
+     */
+    boolean needsMd5(String parentId, String filename, long length) {
+        for (Entry candidate : sameSize(parentId, filename, length)) {
+            if (!TextUtils.isEmpty(candidate.md5)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Files of a folder with the same name and size as the content to upload.
+     */
+    private List<Entry> sameSize(String parentId, String filename, long length) {
+        List<Entry> matches = new ArrayList<Entry>();
+        if (filename == null || length < 0) {
+            return matches;
+        }
+
+        Entry folder = listing(parentId);
+        if (folder == null || folder.contents == null) {
+            return matches;
+        }
+        // Only the children with the same name are created from a lazy listing
+        List<Entry> candidates = new ArrayList<Entry>();
+        synchronized (listings) {
+            List<Entry> contents = folder.contents;
+            for (int i = 0; i < contents.size(); i++) {
+                if (filename.equals(nameAt(contents, i))) {
+                    candidates.add(contents.get(i));
+                }
+            }
+        }
+
+        for (Entry candidate : candidates) {
+            if (candidate.type == Entry.Type.DIRECTORY) {
+                continue;
+            }
+
+            // Size is not always part of a listing, ask for it
+            if (candidate.size == null && !candidate.extraInfoAvailable) {
+                try {
+                    candidate.setExtraInfos(api.fileInfoSynchronus(candidate.identifier));
+                } catch (SynchronusException e) {
+                    e.printStackTrace();
+                    return new ArrayList<Entry>();
+                }
+            }
+            if (candidate.bytes == length) {
+                matches.add(candidate);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Build the Entry of an uploaded file and record it in the known listing of its folder.
+     *
+     * @param response JSON returned by the upload request
+     * @param parentId unique identifier of the parent folder, null for the root folder
+     * @param filename name of the uploaded file
+     * @param length   size of the content in bytes, -1 if unknown
+     * @return the uploaded Entry
+     */
+    Entry uploaded(JSONObject response, String parentId, String filename, long length) {
+        Entry entry = new Entry(response);
+        if (TextUtils.isEmpty(entry.identifier)) {
+            entry.identifier = response.optString("fileId");
+        }
+        if (TextUtils.isEmpty(entry.name)) {
+            entry.name = response.optString("fileName", filename);
+        }
+        if (TextUtils.isEmpty(entry.parentIdentifier) && parentId != null) {
+            entry.parentIdentifier = Interner.intern(parentId);
+        }
+        if (entry.type == Entry.Type.DIRECTORY) {
+            // Upload response has no type, but it is a file for sure.
+            entry.type = Entry.Type.FILE;
+            entry.contents = null;
+        }
+        if (entry.size == null && length >= 0) {
+            entry.bytes = length;
+            entry.size = Entry.humanReadableByteCount(length, true);
+        }
+
+        if (enabled) {
+            synchronized (listings) {
+                Listing listing = listings.get(key(parentId));
+                if (listing != null && listing.folder.contents != null) {
+                    List<Entry> contents = listing.folder.contents;
+                    for (int i = contents.size() - 1; i >= 0; i--) {
+                        if (entry.name.equals(nameAt(contents, i))) {
+                            contents.remove(i);
+                        }
+                    }
+                    contents.add(entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    private Entry listing(String parentId) {
+        String key = key(parentId);
+        long now = System.currentTimeMillis();
+        synchronized (listings) {
+            Listing listing = listings.get(key);
+            if (listing != null && now - listing.time < LISTING_TTL) {
+                return listing.folder;
+            }
+        }
+
+        try {
+            Entry folder = api.listEntriesSynchronus(parentId);
+            synchronized (listings) {
+                listings.put(key, new Listing(folder, now));
+                if (parentId == null) {
+                    rootIdentifier = folder.identifier;
+                }
+            }
+            return folder;
+        } catch (SynchronusException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Name of a child, without creating the Entry of a lazy listing.
+     */
+    private static String nameAt(List<Entry> entries, int index) {
+        if (entries instanceof LazyEntryList) {
+            return ((LazyEntryList) entries).getName(index);
+        }
+        return entries.get(index).name;
+    }
+
+    private static String key(String parentId) {
+        return parentId == null ? "" : parentId;
+    }
+
+    private static final class Listing {
+        final Entry folder;
+        final long time;
+
+        Listing(Entry folder, long time) {
+            this.folder = folder;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+/**
+ * Shared part of the URLs returned by the Cloud Api.
+ *
+ * URLs of a listing only differ by the identifier of their entry and by their query string
+ * (e.g. {@code https://host/path/<id>/thumbnail?token}). A URL is split into a canonical
+ * template, shared by every entry, and a suffix kept by the entry itself. Splitting and
+ * rebuilding are exact: {@code expand(identifier, suffix)} returns the original URL.
+ */
+final class UrlTemplate {
+
+    /** Text before the identifier, or before the last path segment. */
+    private final String head;
+    /** Text between the identifier and the query string. */
+    private final String middle;
+    private final boolean withIdentifier;
+
+    private UrlTemplate(String head, String middle, boolean withIdentifier) {
+        this.head = head;
+        this.middle = middle;
+        this.withIdentifier = withIdentifier;
+    }
+
+    /**
+     * Template of a URL.
+     *
+     * @param url        the URL, neither null nor empty
+     * @param identifier identifier of the entry, may be null
+     * @return the canonical template
+     */
+    static UrlTemplate of(String url, String identifier) {
+        int query = url.indexOf('?');
+        if (query < 0) {
+            query = url.length();
+        }
+        UrlTemplate template;
+        int start = (identifier == null || identifier.length() == 0)
+                ? -1 : url.lastIndexOf(identifier, query - identifier.length());
+        if (start >= 0) {
+            template = new UrlTemplate(url.substring(0, start),
+                    url.substring(start + identifier.length(), query), true);
+        } else {
+            int slash = url.lastIndexOf('/', query - 1);
+            template = new UrlTemplate(url.substring(0, slash + 1), "", false);
+        }
+        return Interner.intern(template);
+    }
+
+    /**
+     * @param url the URL split with {@link #of(String, String)}
+     * @return the part of the URL kept by the entry
+     */
+    String suffix(String url) {
+        if (withIdentifier) {
+            int query = url.indexOf('?');
+            return (query < 0) ? "" : url.substring(query);
+        }
+        return url.substring(head.length());
+    }
+
+    /**
+     * @param identifier the identifier the URL was split with
+     * @param suffix     the suffix of the URL
+     * @return the full URL
+     */
+    String expand(String identifier, String suffix) {
+        if (!withIdentifier) {
+            return head.concat(suffix);
+        }
+        StringBuilder builder = new StringBuilder(head.length() + identifier.length()
+                + middle.length() + suffix.length());
+        return builder.append(head).append(identifier).append(middle).append(suffix).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UrlTemplate)) {
+            return false;
+        }
+        UrlTemplate other = (UrlTemplate) o;
+        return withIdentifier == other.withIdentifier
+                && head.equals(other.head) && middle.equals(other.middle);
+    }
+
+    @Override
+    public int hashCode() {
+        return (head.hashCode() * 31 + middle.hashCode()) * 2 + (withIdentifier ? 1 : 0);
+    }
+}
@@ -24,19 +24,21 @@
 package com.orange.labs.sdk.session;
 
 import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Base64;
 
 import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
-import com.android.volley.toolbox.Volley;
 import com.orange.labs.sdk.OrangeListener;
 import com.orange.labs.sdk.RestUtils;
 import com.orange.labs.sdk.activity.AuthActivity;
+import com.orange.labs.sdk.exception.CloudAPIException;
 import com.orange.labs.sdk.exception.OrangeAPIException;
 
 import org.json.JSONException;
@@ -45,6 +47,7 @@ import org.json.JSONObject;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -64,13 +67,33 @@ public class AuthSession implements Session {
             = "com.orange.sdk.androidAuthSession.FORCE_LOGIN";
     private static final String[] API_DEFAULT_SCOPES = new String[]{"openid", "offline_access"};
 
+    /**
+     * Default time before the expiry of the access token at which it is refreshed, in
+     * milliseconds.
+     */
+    public static final long DEFAULT_REFRESH_MARGIN = 60 * 1000;
+
     private final String appKey;
     private final String appSecret;
     private final String redirectURI;
 
-    private String accessToken = "";
-    private String refreshToken = "";
-    private Date expiresIn;
+    /** Access token and its expiry, replaced as a whole so that any thread reads a consistent pair. */
+    private volatile Token token = Token.NONE;
+    private volatile String refreshToken = "";
+
+    /** Callers waiting for the refresh in flight, null when no refresh is in flight. */
+    private List<Waiter> refreshWaiters;
+
+    private volatile long refreshMargin = DEFAULT_REFRESH_MARGIN;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable scheduledRefresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshIfExpiring();
+        }
+    };
+    private boolean lifecycleRegistered;
+    private volatile Map<String, String> headers;
 
     private Context context;
     private RestUtils restClient;
@@ -151,18 +174,150 @@ public class AuthSession implements Session {
 
     @Override
     public String getAccessToken() {
-        return accessToken;
+        return token.accessToken;
     }
 
     @Override
     public Date getExpiresIn() {
-        return expiresIn;
+        Token current = token;
+        return (current.expiresIn == null) ? null : new Date(current.expiresIn.getTime());
     }
 
-    private void setExpiresIn(int expiresIn) {
+    /**
+     * Publish a new access token.
+     *
+     * @param accessToken the access token
+     * @param expiresIn   its lifetime in seconds
+     */
+    private void setToken(String accessToken, int expiresIn) {
         Calendar calendar = Calendar.getInstance();
+        long issued = calendar.getTimeInMillis();
         calendar.add(Calendar.SECOND, expiresIn);
-        this.expiresIn = calendar.getTime();
+        Token current = new Token(accessToken, issued, calendar.getTime());
+        token = current;
+        scheduleRefresh(current);
+    }
+
+    /**
+     * Set how long before its expiry the access token is refreshed. The refresh is also done
+     * when an activity of the application starts, if the token expires within this margin,
+     * so that requests are not rejected because of an expired token.
+     *
+     * @param refreshMargin the margin in milliseconds, 0 to only refresh once the token has
+     *                      expired
+     */
+    public void setRefreshMargin(long refreshMargin) {
+        if (refreshMargin < 0) {
+            throw new IllegalArgumentException("refreshMargin must not be negative.");
+        }
+        this.refreshMargin = refreshMargin;
+        scheduleRefresh(token);
+    }
+
+    /**
+     * @return how long before its expiry the access token is refreshed, in milliseconds
+     */
+    public long getRefreshMargin() {
+        return refreshMargin;
+    }
+
+    /**
+     * Time at which a token should be refreshed. The margin is limited to half the lifetime
+     * of the token, so that short lived tokens are not refreshed continuously.
+     */
+    private long refreshTime(Token current) {
+        long expiry = current.expiresIn.getTime();
+        long margin = Math.min(refreshMargin, (expiry - current.issued) / 2);
+        return expiry - Math.max(margin, 0);
+    }
+
+    /**
+     * Schedule the refresh of a token, and refresh it when the application returns to the
+     * foreground. The delay of a Handler does not elapse while the device sleeps, the
+     * foreground check catches up in that case.
+     */
+    private void scheduleRefresh(final Token current) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mainHandler.removeCallbacks(scheduledRefresh);
+                if (current != token || current.expiresIn == null) {
+                    return;
+                }
+                registerLifecycle();
+                long delay = refreshTime(current) - System.currentTimeMillis();
+                mainHandler.postDelayed(scheduledRefresh, Math.max(delay, 0));
+            }
+        });
+    }
+
+    /**
+     * Refresh the access token now if it is about to expire.
+     */
+    private void refreshIfExpiring() {
+        Token current = token;
+        if (current.expiresIn == null || !hasRefreshToken()
+                || System.currentTimeMillis() < refreshTime(current)) {
+            return;
+        }
+        refresh(new OrangeListener.Success<String>() {
+            @Override
+            public void onResponse(String response) {
+                // The new token is scheduled by setToken
+            }
+        }, new OrangeListener.Error() {
+            @Override
+            public void onErrorResponse(OrangeAPIException error) {
+                // Requests rejected with the old token will refresh it again
+                error.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Check the token each time an activity of the application starts. Called on the main
+     * thread.
+     */
+    private void registerLifecycle() {
+        if (lifecycleRegistered) {
+            return;
+        }
+        Context application = context.getApplicationContext();
+        if (!(application instanceof Application)) {
+            return;
+        }
+        lifecycleRegistered = true;
+        ((Application) application).registerActivityLifecycleCallbacks(
+                new Application.ActivityLifecycleCallbacks() {
+                    @Override
+                    public void onActivityStarted(Activity activity) {
+                        refreshIfExpiring();
+                    }
+
+                    @Override
+                    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+                    }
+
+                    @Override
+                    public void onActivityResumed(Activity activity) {
+                    }
+
+                    @Override
+                    public void onActivityPaused(Activity activity) {
+                    }
+
+                    @Override
+                    public void onActivityStopped(Activity activity) {
+                    }
+
+                    @Override
+                    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+                    }
+
+                    @Override
+                    public void onActivityDestroyed(Activity activity) {
+                    }
+                });
     }
 
     @Override
@@ -173,12 +328,20 @@ public class AuthSession implements Session {
         return restClient;
     }
 
+    /**
+     * @return the headers of the OAuth requests, built once as the credentials do not change.
+     * The map cannot be modified.
+     */
     @Override
     public Map<String, String> getHeaders() {
-
-        HashMap<String, String> headers = new HashMap<String, String>();
-        headers.put("Authorization", "Basic " + encodedCredentials(appKey, appSecret));
-        return headers;
+        Map<String, String> cached = headers;
+        if (cached == null) {
+            HashMap<String, String> map = new HashMap<String, String>();
+            map.put("Authorization", "Basic " + encodedCredentials(appKey, appSecret));
+            cached = Collections.unmodifiableMap(map);
+            headers = cached;
+        }
+        return cached;
     }
 
     @Override
@@ -200,21 +363,32 @@ public class AuthSession implements Session {
 
     @Override
     public boolean isLinked() {
+        Token current = token;
 
-        if (accessToken == null || accessToken.length() == 0)
+        if (current.accessToken == null || current.accessToken.length() == 0)
             return false;
 
         // Check if access token is still valid function of expire date.
         Date now = new Date();
-        if (now.getTime() < this.expiresIn.getTime())
+        if (now.getTime() < current.expiresIn.getTime())
             return true;
 
         return false;
     }
 
+    /**
+     * @return true if a refresh token has been stored by a previous authentication, in which
+     * case {@link #checkAuthentication} does not need the user
+     */
+    public boolean hasRefreshToken() {
+        String refreshToken = getRefreshToken();
+        return refreshToken != null && refreshToken.length() > 0;
+    }
+
     @Override
     public void unlink() {
-        accessToken = "";
+        token = Token.NONE;
+        scheduleRefresh(Token.NONE);
         setRefreshToken("");
 
         // Write that first connection user has to be connected
@@ -225,12 +399,24 @@ public class AuthSession implements Session {
         editor.commit();
     }
 
+    /**
+     * Get a new access token with the refresh token. Only one refresh is sent at a time: callers
+     * arriving while a refresh is in flight are notified with its result.
+     */
     @Override
     public void refresh(final OrangeListener.Success<String> success,
                         final OrangeListener.Error failure) {
 
-        // Instantiate the RequestQueue.
-        RequestQueue queue = Volley.newRequestQueue(context);
+        synchronized (this) {
+            boolean inFlight = refreshWaiters != null;
+            if (!inFlight) {
+                refreshWaiters = new ArrayList<Waiter>();
+            }
+            refreshWaiters.add(new Waiter(success, failure));
+            if (inFlight) {
+                return;
+            }
+        }
 
         // Prepare URL
         String url = API_SERVER + "/oauth/v2/token";
@@ -254,16 +440,40 @@ public class AuthSession implements Session {
                         JSONObject jsonResponse = null;
                         try {
                             jsonResponse = new JSONObject(response);
-                            accessToken = jsonResponse.optString("access_token");
-
-                            setExpiresIn(jsonResponse.optInt("expires_in"));
-                            success.onResponse("OK");
+                            setToken(jsonResponse.optString("access_token"),
+                                    jsonResponse.optInt("expires_in"));
+                            refreshed(null);
                         } catch (JSONException e) {
                             e.printStackTrace();
-                            //failure(e);
+                            refreshed(new CloudAPIException(e));
                         }
                     }
-                }, failure);
+                }, new OrangeListener.Error() {
+                    @Override
+                    public void onErrorResponse(OrangeAPIException error) {
+                        refreshed(error);
+                    }
+                });
+    }
+
+    /**
+     * Notify the callers waiting for the refresh in flight.
+     *
+     * @param error the error of the refresh, null if it succeeded
+     */
+    private void refreshed(OrangeAPIException error) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            waiters = refreshWaiters;
+            refreshWaiters = null;
+        }
+        for (Waiter waiter : waiters) {
+            if (error == null) {
+                waiter.success.onResponse("OK");
+            } else {
+                waiter.failure.onErrorResponse(error);
+            }
+        }
     }
 
     /**
@@ -352,9 +562,8 @@ public class AuthSession implements Session {
                                     try {
                                         jsonResponse = new JSONObject(response);
                                         // save values :
-                                        accessToken = jsonResponse.optString("access_token");
-
-                                        setExpiresIn(jsonResponse.optInt("expires_in"));
+                                        setToken(jsonResponse.optString("access_token"),
+                                                jsonResponse.optInt("expires_in"));
 
                                         setRefreshToken(jsonResponse.optString("refresh_token"));
 
@@ -398,4 +607,35 @@ public class AuthSession implements Session {
         editor.putString(SHARED_PREFERENCES_REFRESH_TOKEN, refreshToken);
         editor.commit();
     }
+
+    /**
+     * Access token with its expiry date. Instances are immutable.
+     */
+    private static final class Token {
+        static final Token NONE = new Token("", 0, null);
+
+        final String accessToken;
+        /** Time at which the token was received. */
+        final long issued;
+        final Date expiresIn;
+
+        Token(String accessToken, long issued, Date expiresIn) {
+            this.accessToken = accessToken;
+            this.issued = issued;
+            this.expiresIn = expiresIn;
+        }
+    }
+
+    /**
+     * Callbacks of a caller of {@link #refresh}.
+     */
+    private static final class Waiter {
+        final OrangeListener.Success<String> success;
+        final OrangeListener.Error failure;
+
+        Waiter(OrangeListener.Success<String> success, OrangeListener.Error failure) {
+            this.success = success;
+            this.failure = failure;
+        }
+    }
 }
@@ -91,7 +91,8 @@ public interface Session {
     public void unlink();
 
     /**
-     * Refresh a session thanks to refresh token
+     * Refresh a session thanks to refresh token. Only one refresh is sent at a time: callers
+     * arriving while a refresh is in flight are notified with its result.
      *
      * @param success Listener called when session has been refreshed
      * @param failure Listener called when error occurred
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 Orange.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.orange.labs.sdk;
+
+import com.orange.labs.sdk.OrangeCloudAPI.Entry;
+import com.orange.labs.sdk.OrangeCloudAPI.Metadata;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EntrySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndReopenTree() throws IOException {
+        Entry photo = file("phöto-日本", "写真.jpg", "sub", Entry.Type.IMAGE);
+        photo.bytes = 123456789L;
+        photo.size = Entry.humanReadableByteCount(photo.bytes, true);
+        photo.creationDate = new Date(1485000000000L);
+        photo.md5 = "d41d8cd98f00b204e9800998ecf8427e";
+        photo.setDownloadURL("https://cloud.example/files/phöto-日本/content?token=a");
+        photo.setPreviewURL("https://cloud.example/files/phöto-日本/preview");
+        photo.setThumbnailURL("https://cloud.example/files/phöto-日本/thumbnail");
+        photo.metadata = new Metadata();
+        photo.metadata.height = "3000";
+        photo.metadata.width = "4000";
+        photo.metadata.shootingDate = new Date(-86400000L);
+        photo.extraInfoAvailable = true;
+
+        // Only an identifier and a type, every other field is null
+        Entry bare = file("bare", null, null, Entry.Type.FILE);
+
+        Entry sub = folder("sub", "Sous-dossier été", "root");
+        sub.contents.add(photo);
+        sub.contents.add(bare);
+
+        Entry music = file("music", "song.mp3", "root", Entry.Type.MUSIC);
+        music.metadata = new Metadata();
+        music.metadata.width = "";
+
+        Entry empty = folder("empty", "Empty", "root");
+
+        Entry root = folder("root", "Root", null);
+        root.contents.add(sub);
+        root.contents.add(empty);
+        root.contents.add(music);
+
+        File file = folder.newFile("tree");
+        EntrySnapshot.write(root, file);
+        EntrySnapshot snapshot = EntrySnapshot.open(file);
+
+        assertEquals(6, snapshot.size());
+        assertNull(snapshot.get("missing"));
+        assertNull(snapshot.get(null));
+
+        Entry readRoot = snapshot.getRoot();
+        assertEntry(root, readRoot);
+        assertEquals(3, readRoot.contents.size());
+        assertEntry(sub, readRoot.contents.get(0));
+        assertEntry(empty, readRoot.contents.get(1));
+        assertTrue(readRoot.contents.get(1).contents.isEmpty());
+        assertEntry(music, readRoot.contents.get(2));
+
+        Entry readSub = readRoot.contents.get(0);
+        assertEquals(2, readSub.contents.size());
+        assertEntry(photo, readSub.contents.get(0));
+        assertEntry(bare, readSub.contents.get(1));
+
+        for (Entry entry : new Entry[]{root, sub, photo, bare, music, empty}) {
+            Entry found = snapshot.get(entry.identifier);
+            assertNotNull(entry.identifier, found);
+            assertEntry(entry, found);
+        }
+        assertEquals(2, snapshot.get("sub").contents.size());
+        assertEntry(photo, snapshot.get("sub").contents.get(0));
+    }
+
+    @Test
+    public void writeEmptySnapshot() throws IOException {
+        File file = folder.newFile("empty");
+        EntrySnapshot.write(null, file);
+        EntrySnapshot snapshot = EntrySnapshot.open(file);
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.getRoot());
+        assertNull(snapshot.get("root"));
+    }
+
+    @Test
+    public void rejectInvalidFile() throws IOException {
+        File file = folder.newFile("invalid");
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write("not a snapshot at all, but long enough".getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        try {
+            EntrySnapshot.open(file);
+            fail("An invalid file must not be opened");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static Entry file(String identifier, String name, String parent, Entry.Type type) {
+        Entry entry = new Entry();
+        entry.identifier = identifier;
+        entry.name = name;
+        entry.parentIdentifier = parent;
+        entry.type = type;
+        return entry;
+    }
+
+    private static Entry folder(String identifier, String name, String parent) {
+        Entry entry = file(identifier, name, parent, Entry.Type.DIRECTORY);
+        entry.contents = new ArrayList<Entry>();
+        return entry;
+    }
+
+    private static void assertEntry(Entry expected, Entry actual) {
+        String id = expected.identifier;
+        assertEquals(id, expected.identifier, actual.identifier);
+        assertEquals(id, expected.name, actual.name);
+        assertEquals(id, expected.parentIdentifier, actual.parentIdentifier);
+        assertEquals(id, expected.type, actual.type);
+        assertEquals(id, expected.size, actual.size);
+        if (expected.size != null) {
+            assertEquals(id, expected.bytes, actual.bytes);
+        }
+        assertEquals(id, expected.creationDate, actual.creationDate);
+        assertEquals(id, expected.md5, actual.md5);
+        assertEquals(id, expected.getDownloadURL(), actual.getDownloadURL());
+        assertEquals(id, expected.getPreviewURL(), actual.getPreviewURL());
+        assertEquals(id, expected.getThumbnailURL(), actual.getThumbnailURL());
+        assertEquals(id, expected.extraInfoAvailable, actual.extraInfoAvailable);
+        if (expected.metadata == null) {
+            assertNull(id, actual.metadata);
+        } else {
+            assertNotNull(id, actual.metadata);
+            assertEquals(id, expected.metadata.height, actual.metadata.height);
+            assertEquals(id, expected.metadata.width, actual.metadata.width);
+            assertEquals(id, expected.metadata.shootingDate, actual.metadata.shootingDate);
+        }
+        if (expected.type == Entry.Type.DIRECTORY) {
+            assertNotNull(id, actual.contents);
+            assertEquals(id, expected.contents.size(), actual.contents.size());
+        } else {
+            assertFalse(id, actual.contents != null && !actual.contents.isEmpty());
+        }
+    }
+}
@@ -42,11 +42,16 @@ import android.widget.Toast;
 
 import com.orange.labs.sample.cache.LruBitmapCache;
 import com.orange.labs.sample.fragment.FolderFragment;
+import com.orange.labs.sdk.BitmapPool;
+import com.orange.labs.sdk.EntryImageCache;
+import com.orange.labs.sdk.ListingCache;
+import com.orange.labs.sdk.OfflineJournal;
 import com.orange.labs.sdk.OrangeCloudAPI;
 import com.orange.labs.sdk.OrangeListener;
 import com.orange.labs.sdk.exception.OrangeAPIException;
 import com.orange.labs.sdk.session.AuthSession;
 
+import java.io.File;
 import java.util.ArrayList;
 
 public class MainActivity extends AppCompatActivity
@@ -113,6 +118,30 @@ public class MainActivity extends AppCompatActivity
                     // An you can set a Image cache policy
                     mApi.setImageCache(new LruBitmapCache());
 
+                    // Thumbnails and previews are also kept on disk, across restarts
+                    mApi.setEntryImageCache(new EntryImageCache(new File(getCacheDir(), "images")));
+
+                    // Bitmaps of thumbnails no longer displayed are reused to decode new ones
+                    mApi.setBitmapPool(new BitmapPool());
+
+                    // Folder listings are cached on disk and revalidated in background
+                    mApi.setListingCache(new ListingCache(new File(getCacheDir(), "listings")));
+
+                    // Modifications made without network are sent when it comes back
+                    OfflineJournal journal = new OfflineJournal(new File(getFilesDir(), "journal"));
+                    journal.setListener(new OfflineJournal.Listener() {
+                        @Override
+                        public void onReplayed(OfflineJournal.Operation operation, OrangeCloudAPI.Entry result) {
+                        }
+
+                        @Override
+                        public void onConflict(OfflineJournal.Operation operation, OrangeAPIException error) {
+                            Toast.makeText(getApplicationContext(), "Offline change not applied: "
+                                    + error.getDescription(), Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                    mApi.setOfflineJournal(journal);
+
             /** Add scope for example cloudfullread
              * (see https://developer.orange.com/apis/cloud-france/api-reference)
              */
@@ -139,13 +168,21 @@ public class MainActivity extends AppCompatActivity
 
         // need to be sure that is first loading!
         if (mainStateNonce == null) {
+            // A returning user sees the cached folders while the session is refreshed
+            final boolean returningUser = session.hasRefreshToken();
+            if (returningUser) {
+                mainStateNonce = "mainStateNonce";
+                loadFragment(new FolderFragment(), false);
+            }
             session.checkAuthentication(new OrangeListener.Success<String>() {
                 @Override
                 public void onResponse(String response) {
-                    // Have a valid session:
-                    mainStateNonce = "mainStateNonce";
-                    // Load default fragment
-                    loadFragment(new FolderFragment(), false);
+                    if (!returningUser) {
+                        // Have a valid session:
+                        mainStateNonce = "mainStateNonce";
+                        // Load default fragment
+                        loadFragment(new FolderFragment(), false);
+                    }
                 }
             }, new OrangeListener.Error() {
                 @Override
@@ -52,10 +52,9 @@ public class EntryAdapter extends BaseAdapter {
     }
 
     public void setEntries(List<OrangeCloudAPI.Entry> entries) {
-        if (mEntries != null) {
-            mEntries.clear();
-        }
-        addEntries(entries);
+        // Keep the list given by the SDK: its entries are only created when displayed
+        mEntries = (entries != null) ? entries : new ArrayList<OrangeCloudAPI.Entry>();
+        notifyDataSetChanged();
     }
 
     public void addEntries(List<OrangeCloudAPI.Entry> entries) {
@@ -79,7 +78,7 @@ public class EntryAdapter extends BaseAdapter {
 
     @Override
     public long getItemId(int position) {
-        return mEntries.indexOf(getItem(position));
+        return position;
     }
 
     @Override
@@ -33,6 +33,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.orange.labs.sample.R;
+import com.orange.labs.sdk.ImageTarget;
 import com.orange.labs.sdk.OrangeCloudAPI;
 import com.orange.labs.sdk.OrangeListener;
 import com.orange.labs.sdk.exception.OrangeAPIException;
@@ -46,9 +47,21 @@ public class EntryListAdapter extends EntryAdapter {
 
     private View.OnClickListener mMoreInfoClickListener;
 
+    private ImageTarget mThumbnailTarget;
+
     public EntryListAdapter(Context context) {
         super(context);
         mDateFormat = new SimpleDateFormat("dd MM yyyy HH:mm", Locale.US);
+        // Thumbnails are displayed in 60dp views, no need for full screen ARGB bitmaps
+        int size = Math.round(60 * context.getResources().getDisplayMetrics().density);
+        mThumbnailTarget = new ImageTarget(size, size, Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * @return the target the thumbnails of the rows are requested for
+     */
+    public ImageTarget getThumbnailTarget() {
+        return mThumbnailTarget;
     }
 
     @Override
@@ -92,12 +105,13 @@ public class EntryListAdapter extends EntryAdapter {
                         viewHolder.thumbView.setImageResource(R.mipmap.music);
                         break;
                 }
+                viewHolder.clearThumbnail(mApi);
 
-                if (entry.thumbnailURL != null) {
-                    mApi.thumbnail(entry, new OrangeListener.Success<Bitmap>() {
+                if (entry.getThumbnailURL() != null) {
+                    mApi.thumbnail(entry, mThumbnailTarget, new OrangeListener.Success<Bitmap>() {
                         @Override
                         public void onResponse(Bitmap response) {
-                            viewHolder.thumbView.setImageBitmap(response);
+                            viewHolder.setThumbnail(mApi, response);
                         }
                     }, new OrangeListener.Error() {
                         @Override
@@ -127,6 +141,7 @@ public class EntryListAdapter extends EntryAdapter {
                 }
             } else {
                 viewHolder.thumbView.setImageResource(R.drawable.ic_folder);
+                viewHolder.clearThumbnail(mApi);
                 viewHolder.dateView.setVisibility(View.GONE);
                 viewHolder.extraView.setVisibility(View.GONE);
             }
@@ -154,6 +169,19 @@ public class EntryListAdapter extends EntryAdapter {
         TextView dateView;
         TextView extraView;
         ImageButton moreButton;
+        // Thumbnail delivered by the SDK, released when the view shows another one
+        Bitmap thumbnail;
+
+        void setThumbnail(OrangeCloudAPI<?> api, Bitmap bitmap) {
+            thumbView.setImageBitmap(bitmap);
+            api.releaseBitmap(thumbnail);
+            thumbnail = bitmap;
+        }
+
+        void clearThumbnail(OrangeCloudAPI<?> api) {
+            api.releaseBitmap(thumbnail);
+            thumbnail = null;
+        }
     }
 
 }
@@ -27,8 +27,10 @@ import android.graphics.Bitmap;
 import android.util.LruCache;
 
 import com.android.volley.toolbox.ImageLoader;
+import com.orange.labs.sdk.MemoryGovernor;
 
-public class LruBitmapCache extends LruCache<String, Bitmap> implements ImageLoader.ImageCache {
+public class LruBitmapCache extends LruCache<String, Bitmap> implements ImageLoader.ImageCache,
+        MemoryGovernor.Trimmable {
 
     public static int getDefaultLruCacheSize() {
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
@@ -59,4 +61,17 @@ public class LruBitmapCache extends LruCache<String, Bitmap> implements ImageLoa
     public void putBitmap(String url, Bitmap bitmap) {
         put(url, bitmap);
     }
+
+    @Override
+    public long trimMemory(float keep) {
+        int before = size();
+        for (String url : snapshot().keySet()) {
+            if (size() <= maxSize() * keep) {
+                break;
+            }
+            remove(url);
+        }
+        // Sizes are in kilobytes
+        return (before - size()) * 1024L;
+    }
 }
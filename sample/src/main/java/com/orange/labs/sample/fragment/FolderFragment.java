@@ -29,6 +29,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.text.Editable;
@@ -40,6 +41,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.EditText;
@@ -52,8 +54,10 @@ import android.widget.TextView;
 import com.orange.labs.sample.MainActivity;
 import com.orange.labs.sample.R;
 import com.orange.labs.sample.adapter.EntryListAdapter;
+import com.orange.labs.sdk.EntryIdentityMap;
 import com.orange.labs.sdk.OrangeCloudAPI;
 import com.orange.labs.sdk.OrangeListener;
+import com.orange.labs.sdk.Prefetcher;
 import com.orange.labs.sdk.exception.OrangeAPIException;
 
 import org.json.JSONException;
@@ -91,6 +95,58 @@ public class FolderFragment extends Fragment
 
     private OrangeCloudAPI.Entry mEntry;
 
+    // Thumbnails of the next screens and listings of the visible folders
+    private Prefetcher mPrefetcher;
+
+    // Scroll listener feeding the prefetcher with the visible rows and the scroll speed
+    private AbsListView.OnScrollListener mScrollListener = new AbsListView.OnScrollListener() {
+        private int mLastFirst = -1;
+        private long mLastTime;
+        private float mVelocity;
+
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+            if (scrollState == SCROLL_STATE_IDLE) {
+                mVelocity = 0;
+                prefetch(view.getFirstVisiblePosition(), view.getChildCount());
+            }
+        }
+
+        @Override
+        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            if (firstVisibleItem == mLastFirst) {
+                return;
+            }
+            long now = SystemClock.uptimeMillis();
+            if (mLastFirst >= 0 && now > mLastTime) {
+                mVelocity = (firstVisibleItem - mLastFirst) * 1000f / (now - mLastTime);
+            }
+            mLastFirst = firstVisibleItem;
+            mLastTime = now;
+            prefetch(firstVisibleItem, visibleItemCount);
+        }
+
+        private void prefetch(int first, int count) {
+            if (mPrefetcher != null && mAdapter.getCount() > 0) {
+                mPrefetcher.onViewportChanged(mAdapter.getEntries(), first, count, mVelocity);
+            }
+        }
+    };
+
+    // Refresh the list when the SDK applies a change to the displayed folder
+    private EntryIdentityMap.Listener mEntryListener = new EntryIdentityMap.Listener() {
+        @Override
+        public void onEntryChanged(OrangeCloudAPI.Entry entry) {
+            if (entry == mEntry) {
+                mAdapter.setEntries(entry.contents);
+            }
+        }
+
+        @Override
+        public void onEntryDeleted(String identifier) {
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -125,6 +181,11 @@ public class FolderFragment extends Fragment
         });
 
         mListView.setAdapter(mAdapter);
+        mApi.getIdentityMap().addListener(mEntryListener);
+
+        mPrefetcher = new Prefetcher(mApi, mAdapter.getThumbnailTarget());
+        mPrefetcher.setListingParameters(listingParameters());
+        mListView.setOnScrollListener(mScrollListener);
 
         mSwipeRefreshLayout = (SwipeRefreshLayout) getView().findViewById(R.id.swipe_container);
         mSwipeRefreshLayout.setOnRefreshListener(this);
@@ -192,6 +253,13 @@ public class FolderFragment extends Fragment
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        mApi.getIdentityMap().removeListener(mEntryListener);
+        mPrefetcher.cancel();
+        super.onDestroyView();
+    }
+
     @Override
     public void onDestroy() {
         if (breadcrumbs.size() > 0) {
@@ -278,20 +346,26 @@ public class FolderFragment extends Fragment
     }
 
     /**
-     * Method to browse folders
-     *
-     * @param entry an entry Object or null
+     * @return the parameters the folders are listed with
      */
-    private void browseFolders(OrangeCloudAPI.Entry entry) {
-        mProgressBar.setVisibility(View.VISIBLE);
+    private static JSONObject listingParameters() {
         final JSONObject params = new JSONObject();
         try {
             params.put("showthumbnails", "nocall");
         } catch (JSONException e) {
             e.printStackTrace();
         }
+        return params;
+    }
 
-        mApi.listEntries(entry, params, new OrangeListener.Success<OrangeCloudAPI.Entry>() {
+    /**
+     * Method to browse folders
+     *
+     * @param entry an entry Object or null
+     */
+    private void browseFolders(OrangeCloudAPI.Entry entry) {
+        mProgressBar.setVisibility(View.VISIBLE);
+        mApi.listEntries(entry, listingParameters(), new OrangeListener.Success<OrangeCloudAPI.Entry>() {
             @Override
             public void onResponse(OrangeCloudAPI.Entry entry) {
                 mEntry = entry;
@@ -306,6 +380,22 @@ public class FolderFragment extends Fragment
                     isAlreadyLoaded = true;
                 }
             }
+        }, new OrangeListener.Revalidation<OrangeCloudAPI.Entry>() {
+            @Override
+            public void onRevalidated(OrangeCloudAPI.Entry entry, boolean changed) {
+                // The cached listing has been displayed, only refresh it if it changed
+                mEntry = entry;
+                mSwipeRefreshLayout.setRefreshing(false);
+                if (changed) {
+                    mAdapter.setEntries(entry.contents);
+                }
+            }
+
+            @Override
+            public void onRevalidationFailed(OrangeAPIException error) {
+                // Keep the cached listing displayed
+                mSwipeRefreshLayout.setRefreshing(false);
+            }
         }, this);
     }
 
@@ -329,7 +419,8 @@ public class FolderFragment extends Fragment
                     mApi.createFolder(mEntry, folderName, new OrangeListener.Success<OrangeCloudAPI.Entry>() {
                         @Override
                         public void onResponse(OrangeCloudAPI.Entry response) {
-                            browseFolders(mEntry);
+                            // The listing is updated by the SDK, see mEntryListener
+                            mProgressBar.setVisibility(View.GONE);
                         }
                     }, FolderFragment.this);
                 }
@@ -348,7 +439,7 @@ public class FolderFragment extends Fragment
         mApi.copy(copiedEntry, mEntry, new OrangeListener.Success<OrangeCloudAPI.Entry>() {
             @Override
             public void onResponse(OrangeCloudAPI.Entry response) {
-                browseFolders(mEntry);
+                mProgressBar.setVisibility(View.GONE);
             }
         }, this);
     }
@@ -362,7 +453,7 @@ public class FolderFragment extends Fragment
         mApi.move(copiedEntry, mEntry, new OrangeListener.Success<OrangeCloudAPI.Entry>() {
             @Override
             public void onResponse(OrangeCloudAPI.Entry response) {
-                browseFolders(mEntry);
+                mProgressBar.setVisibility(View.GONE);
             }
         }, this);
     }
@@ -387,7 +478,8 @@ public class FolderFragment extends Fragment
                     mApi.rename(entry, name, new OrangeListener.Success<OrangeCloudAPI.Entry>() {
                         @Override
                         public void onResponse(OrangeCloudAPI.Entry response) {
-                            browseFolders(mEntry);
+                            // The listing is updated by the SDK, see mEntryListener
+                            mProgressBar.setVisibility(View.GONE);
                         }
                     }, FolderFragment.this);
                 }
@@ -413,8 +505,7 @@ public class FolderFragment extends Fragment
                 mApi.delete(entry, new OrangeListener.Success<String>() {
                     @Override
                     public void onResponse(String response) {
-                        // Need to refresh
-                        browseFolders(mEntry);
+                        mProgressBar.setVisibility(View.GONE);
                     }
                 }, FolderFragment.this);
             }